@@ -0,0 +1,118 @@
+package edu.uci.eecs.compiler.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import edu.uci.eecs.compiler.frontend.BufferScanner;
+import edu.uci.eecs.compiler.frontend.CompilerOptions.SSAMode;
+import edu.uci.eecs.compiler.frontend.Parser;
+import edu.uci.eecs.compiler.model.CompilationContext;
+import edu.uci.eecs.compiler.model.DominatorTree;
+import edu.uci.eecs.compiler.model.Method;
+import edu.uci.eecs.compiler.model.Program;
+import edu.uci.eecs.compiler.representation.Block;
+
+/**
+ * Dominator computation on procedures with deeply nested if and while statements.
+ * The time per block should stay flat when the nesting gets deeper, and so should the
+ * time of a dominance query. The Parser is
+ * recursive, deeper programs need a larger thread stack (-Xss).
+ *
+ * Usage: DominatorBenchmark [maximal depth] [rounds]
+ *
+ */
+public class DominatorBenchmark {
+
+	public static void main(String[] args) {
+		int maximalDepth = args.length > 0 ? Integer.parseInt(args[0]) : 1600;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+		for(int depth = 100; depth <= maximalDepth; depth *= 2) {
+			Program program = parse(generate(depth));
+			Method method = null;
+			for(Method candidate : program.getMethods()) {
+				if(candidate.getName().equals("nest")) {
+					method = candidate;
+				}
+			}
+
+			//warm up
+			for(int round = 0; round < rounds; round++) {
+				method.buildDominatorTree();
+			}
+			long startTime = System.nanoTime();
+			for(int round = 0; round < rounds; round++) {
+				method.buildDominatorTree();
+			}
+			long elapsed = (System.nanoTime() - startTime) / rounds;
+			int blocks = method.getBlocks().size();
+			System.out.println("depth " + depth + ", blocks " + blocks + ": " + elapsed / 1000 + " us, "
+					+ elapsed / blocks + " ns per block, " + timeQueries(method) + " ns per query");
+		}
+	}
+
+	/**
+	 * Dominance between pseudo random pairs of blocks.
+	 */
+	private static long timeQueries(Method method) {
+		DominatorTree tree = method.getDominatorTree();
+		List<Block> blocks = method.getBlocks();
+		int queries = 1000000;
+		int dominated = 0;
+		int seed = 12345;
+		long startTime = System.nanoTime();
+		for(int i = 0; i < queries; i++) {
+			seed = seed * 1103515245 + 12345;
+			Block dominator = blocks.get((seed >>> 8) % blocks.size());
+			seed = seed * 1103515245 + 12345;
+			Block block = blocks.get((seed >>> 8) % blocks.size());
+			if(tree.isDominator(dominator, block)) {
+				dominated++;
+			}
+		}
+		long elapsed = System.nanoTime() - startTime;
+		return dominated >= 0 ? elapsed / queries : 0;
+	}
+
+	private static Program parse(byte[] source) {
+		CompilationContext context = new CompilationContext();
+		BufferScanner scanner = new BufferScanner(ByteBuffer.wrap(source), context.getInterner());
+		Parser parser = new Parser(scanner, new Program(context), SSAMode.MINIMAL);
+		return parser.parseProgram();
+	}
+
+	/**
+	 * main
+	 * procedure nest();
+	 * var a, b;
+	 * { while a < 10 do if a < b then ... else let b <- b + 1 fi; let a <- a + 1 od };
+	 * { call nest() }.
+	 * Levels alternate between while and if.
+	 */
+	static byte[] generate(int depth) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("main\nprocedure nest();\nvar a, b;\n{\n");
+		for(int level = 0; level < depth; level++) {
+			if(level % 2 == 0) {
+				builder.append("while a < ").append(level + 10).append(" do\n");
+			} else {
+				builder.append("if a < b then\n");
+			}
+		}
+		builder.append("let a <- a + 1\n");
+		for(int level = depth - 1; level >= 0; level--) {
+			if(level % 2 == 0) {
+				builder.append("; let a <- a + 1\nod\n");
+			} else {
+				builder.append("else let b <- b + 1\nfi\n");
+			}
+		}
+		builder.append("};\n{\n\tcall nest()\n}.\n");
+
+		byte[] source = new byte[builder.length()];
+		for(int i = 0; i < source.length; i++) {
+			source[i] = (byte)builder.charAt(i);
+		}
+		return source;
+	}
+}
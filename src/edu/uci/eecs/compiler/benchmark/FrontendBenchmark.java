@@ -0,0 +1,138 @@
+package edu.uci.eecs.compiler.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import edu.uci.eecs.compiler.frontend.BufferScanner;
+import edu.uci.eecs.compiler.frontend.CompilerOptions.SSAMode;
+import edu.uci.eecs.compiler.frontend.Parser;
+import edu.uci.eecs.compiler.frontend.Scanner;
+import edu.uci.eecs.compiler.model.CompilationContext;
+import edu.uci.eecs.compiler.model.Program;
+import edu.uci.eecs.compiler.model.State;
+import edu.uci.eecs.compiler.util.Interner;
+import edu.uci.eecs.compiler.util.Token;
+
+/**
+ * Frontend on a program of ProgramGenerator: token throughput of both scanners,
+ * Parser.parseProgram in every SSA mode and State snapshots. Every case runs as many
+ * warm up rounds as measured rounds, the best and the mean round are printed.
+ *
+ * Usage: FrontendBenchmark [functions] [depth] [variables] [array dimensions] [rounds]
+ *
+ */
+public class FrontendBenchmark {
+
+	private static final int STATE_VARIABLES = 1000;
+	private static final int SNAPSHOTS = 1000000;
+
+	private interface Case {
+		void run() throws IOException;
+	}
+
+	//results are added to it, so the JIT can't drop the work
+	private static long sink;
+
+	public static void main(String[] args) throws IOException {
+		int functions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int variables = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+		int arrayDimensions = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+		int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+		final byte[] source = new ProgramGenerator(functions, depth, variables, arrayDimensions).generate();
+		final File file = File.createTempFile("frontend", ".txt");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(source);
+		} finally {
+			out.close();
+		}
+		long tokens = countTokens(source);
+		System.out.println("functions: " + functions + ", depth: " + depth + ", variables: " + variables
+				+ ", array dimensions: " + arrayDimensions + ", source bytes: " + source.length + ", tokens: " + tokens);
+
+		measure("buffer scanner", rounds, tokens, "tokens", new Case() {
+			public void run() {
+				sink += countTokens(source);
+			}
+		});
+		measure("stream scanner", rounds, tokens, "tokens", new Case() {
+			public void run() {
+				Scanner scanner = new Scanner(file.getPath(), new Interner());
+				try {
+					while(!scanner.expectToken(Token.EOF)) {
+						scanner.nextToken();
+						sink++;
+					}
+				} finally {
+					scanner.close();
+				}
+			}
+		});
+		for(final SSAMode mode : SSAMode.values()) {
+			measure("parse " + mode.name().toLowerCase(), rounds, source.length, "bytes", new Case() {
+				public void run() {
+					sink += parse(source, mode).getMethods().size();
+				}
+			});
+		}
+		measure("state snapshot", rounds, SNAPSHOTS, "snapshots", new Case() {
+			public void run() {
+				State state = new State();
+				for(int id = 0; id < STATE_VARIABLES; id++) {
+					state.addVariable(id);
+				}
+				int seed = 12345;
+				for(int i = 0; i < SNAPSHOTS; i++) {
+					State snapshot = state.snapshot();
+					seed = seed * 1103515245 + 12345;
+					state.setVariable((seed >>> 8) % STATE_VARIABLES, null);
+					if(snapshot.getVariable(i % STATE_VARIABLES) == null) {
+						sink++;
+					}
+				}
+			}
+		});
+		if(sink == 42) {
+			System.out.println();
+		}
+	}
+
+	private static void measure(String name, int rounds, long units, String unit, Case benchmark) throws IOException {
+		for(int round = 0; round < rounds; round++) {
+			benchmark.run();
+		}
+		long best = Long.MAX_VALUE;
+		long total = 0;
+		for(int round = 0; round < rounds; round++) {
+			long startTime = System.nanoTime();
+			benchmark.run();
+			long elapsed = System.nanoTime() - startTime;
+			best = Math.min(best, elapsed);
+			total += elapsed;
+		}
+		System.out.println(String.format("%-16s best %8.3f ms, mean %8.3f ms, %.1f M%s/s", name,
+				best / 1e6, total / 1e6 / rounds, units * 1e3 / best, unit));
+	}
+
+	private static long countTokens(byte[] source) {
+		BufferScanner scanner = new BufferScanner(ByteBuffer.wrap(source), new Interner());
+		long tokens = 0;
+		while(!scanner.expectToken(Token.EOF)) {
+			scanner.nextToken();
+			tokens++;
+		}
+		return tokens;
+	}
+
+	private static Program parse(byte[] source, SSAMode mode) {
+		CompilationContext context = new CompilationContext();
+		BufferScanner scanner = new BufferScanner(ByteBuffer.wrap(source), context.getInterner());
+		Parser parser = new Parser(scanner, new Program(context), mode);
+		return parser.parseProgram();
+	}
+}
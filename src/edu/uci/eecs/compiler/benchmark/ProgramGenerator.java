@@ -0,0 +1,287 @@
+package edu.uci.eecs.compiler.benchmark;
+
+import java.util.Random;
+
+/**
+ * Deterministic generator of PL241 programs for the benchmarks. java.util.Random gives
+ * the same sequence for a seed on every JVM, so the same parameters give the same program.
+ *
+ * The program has four global variables, two global arrays with the given number of
+ * dimensions and the given number of functions; functions with an even index return a
+ * value, the others are procedures. Every function has the given number of local
+ * variables. A statement sequence holds assignments, array stores and calls of the
+ * functions declared before, and one while or if statement with another sequence inside
+ * until the given depth is reached, so the size grows linearly with the depth.
+ *
+ * Usage: ProgramGenerator [functions] [depth] [variables] [array dimensions] [seed]
+ *
+ */
+public class ProgramGenerator {
+
+	private static final int GLOBALS = 4;
+	private static final int ARRAYS = 2;
+	private static final int STATEMENTS = 4;      //simple statements of a sequence
+	private static final int EXPRESSION_DEPTH = 2;
+
+	private int functions;
+	private int depth;
+	private int variables;
+	private int arrayDimensions;
+	private long seed;
+
+	private Random random;
+	private StringBuilder builder;
+	private int[] parameterNumbers;
+	private int[][] dimensions;
+
+	//scope of the function being generated, the main body has no locals
+	private int currentFunction;
+	private int locals;
+	private int parameters;
+
+	public ProgramGenerator(int functions, int depth, int variables, int arrayDimensions) {
+		this(functions, depth, variables, arrayDimensions, 241);
+	}
+
+	public ProgramGenerator(int functions, int depth, int variables, int arrayDimensions, long seed) {
+		this.functions = functions;
+		this.depth = depth;
+		this.variables = Math.max(1, variables);
+		this.arrayDimensions = Math.max(1, arrayDimensions);
+		this.seed = seed;
+	}
+
+	public static void main(String[] args) {
+		int functions = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		int variables = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+		int arrayDimensions = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : 241;
+		byte[] source = new ProgramGenerator(functions, depth, variables, arrayDimensions, seed).generate();
+		System.out.write(source, 0, source.length);
+		System.out.flush();
+	}
+
+	public byte[] generate() {
+		random = new Random(seed);
+		builder = new StringBuilder();
+		parameterNumbers = new int[functions];
+		dimensions = new int[ARRAYS][arrayDimensions];
+
+		builder.append("main\nvar g0");
+		for(int i = 1; i < GLOBALS; i++) {
+			builder.append(", g").append(i);
+		}
+		builder.append(";\n");
+		for(int array = 0; array < ARRAYS; array++) {
+			builder.append("array");
+			for(int dimension = 0; dimension < arrayDimensions; dimension++) {
+				dimensions[array][dimension] = 4 + random.nextInt(7);
+				builder.append('[').append(dimensions[array][dimension]).append(']');
+			}
+			builder.append(" a").append(array).append(";\n");
+		}
+
+		for(int function = 0; function < functions; function++) {
+			appendFunction(function);
+		}
+
+		currentFunction = functions;
+		locals = 0;
+		parameters = 0;
+		builder.append("{\n");
+		for(int function = 0; function < functions; function++) {
+			indent(1);
+			appendCall(function);
+			builder.append(";\n");
+		}
+		indent(1);
+		builder.append("call OutputNum(g0)\n}.\n");
+
+		byte[] source = new byte[builder.length()];
+		for(int i = 0; i < source.length; i++) {
+			source[i] = (byte)builder.charAt(i);
+		}
+		return source;
+	}
+
+	private static boolean isFunction(int function) {
+		return function % 2 == 0;
+	}
+
+	private void appendFunction(int function) {
+		currentFunction = function;
+		locals = variables;
+		parameters = random.nextInt(3);
+		parameterNumbers[function] = parameters;
+
+		builder.append(isFunction(function) ? "function f" : "procedure f").append(function).append('(');
+		for(int i = 0; i < parameters; i++) {
+			builder.append(i > 0 ? ", p" : "p").append(i);
+		}
+		builder.append(");\nvar v0");
+		for(int i = 1; i < locals; i++) {
+			builder.append(", v").append(i);
+		}
+		builder.append(";\n{\n");
+		appendSequence(depth, 1);
+		if(isFunction(function)) {
+			builder.append(";\n");
+			indent(1);
+			builder.append("return ");
+			appendExpression(0);
+		}
+		builder.append("\n};\n");
+	}
+
+	/**
+	 * Statements without the separator after the last one.
+	 */
+	private void appendSequence(int level, int indent) {
+		for(int i = 0; i < STATEMENTS; i++) {
+			if(i > 0) {
+				builder.append(";\n");
+			}
+			indent(indent);
+			appendSimpleStatement();
+			if(i == STATEMENTS / 2 - 1 && level > 0) {
+				builder.append(";\n");
+				appendCompoundStatement(level, indent);
+			}
+		}
+	}
+
+	private void appendCompoundStatement(int level, int indent) {
+		indent(indent);
+		if(level % 2 == 0) {
+			builder.append("while ");
+			appendVariable();
+			builder.append(" < ").append(10 + random.nextInt(90)).append(" do\n");
+			appendSequence(level - 1, indent + 1);
+			builder.append('\n');
+			indent(indent);
+			builder.append("od");
+		} else {
+			builder.append("if ");
+			appendExpression(1);
+			builder.append(random.nextBoolean() ? " <= " : " >= ");
+			appendExpression(1);
+			builder.append(" then\n");
+			appendSequence(level - 1, indent + 1);
+			builder.append('\n');
+			indent(indent);
+			builder.append("else\n");
+			appendSequence(0, indent + 1);
+			builder.append('\n');
+			indent(indent);
+			builder.append("fi");
+		}
+	}
+
+	private void appendSimpleStatement() {
+		int kind = random.nextInt(6);
+		if(kind == 3) {
+			builder.append("let ");
+			appendArrayElement();
+			builder.append(" <- ");
+			appendExpression(0);
+		} else if(kind == 4 && currentFunction > 0) {
+			appendCall(random.nextInt(currentFunction));
+		} else if(kind == 5) {
+			builder.append("call OutputNum(");
+			appendExpression(0);
+			builder.append(')');
+		} else {
+			builder.append("let ");
+			appendVariable();
+			builder.append(" <- ");
+			appendExpression(0);
+		}
+	}
+
+	private void appendCall(int function) {
+		builder.append("call f").append(function).append('(');
+		for(int i = 0; i < parameterNumbers[function]; i++) {
+			if(i > 0) {
+				builder.append(", ");
+			}
+			appendExpression(EXPRESSION_DEPTH);
+		}
+		builder.append(')');
+	}
+
+	private void appendExpression(int nesting) {
+		int terms = 1 + random.nextInt(3);
+		for(int i = 0; i < terms; i++) {
+			if(i > 0) {
+				builder.append(random.nextBoolean() ? " + " : " - ");
+			}
+			appendTerm(nesting);
+		}
+	}
+
+	private void appendTerm(int nesting) {
+		appendFactor(nesting);
+		if(random.nextInt(3) == 0) {
+			if(random.nextBoolean()) {
+				builder.append(" * ");
+				appendFactor(nesting);
+			} else {
+				//never divide by zero
+				builder.append(" / ").append(1 + random.nextInt(9));
+			}
+		}
+	}
+
+	private void appendFactor(int nesting) {
+		int kind = random.nextInt(8);
+		if(kind < 3) {
+			appendVariable();
+		} else if(kind < 5) {
+			builder.append(random.nextInt(100));
+		} else if(kind == 5 && nesting < EXPRESSION_DEPTH) {
+			appendArrayElement();
+		} else if(kind == 6 && nesting < EXPRESSION_DEPTH) {
+			builder.append('(');
+			appendExpression(nesting + 1);
+			builder.append(')');
+		} else if(kind == 7 && nesting < EXPRESSION_DEPTH && currentFunction > 0) {
+			//the functions with an even index return a value
+			int function = random.nextInt(currentFunction) & ~1;
+			appendCall(function);
+		} else {
+			appendVariable();
+		}
+	}
+
+	private void appendArrayElement() {
+		int array = random.nextInt(ARRAYS);
+		builder.append('a').append(array);
+		for(int dimension = 0; dimension < arrayDimensions; dimension++) {
+			builder.append('[');
+			if(random.nextBoolean()) {
+				appendVariable();
+			} else {
+				builder.append(random.nextInt(dimensions[array][dimension]));
+			}
+			builder.append(']');
+		}
+	}
+
+	private void appendVariable() {
+		int choice = random.nextInt(locals + parameters + GLOBALS);
+		if(choice < locals) {
+			builder.append('v').append(choice);
+		} else if(choice < locals + parameters) {
+			builder.append('p').append(choice - locals);
+		} else {
+			builder.append('g').append(choice - locals - parameters);
+		}
+	}
+
+	private void indent(int indent) {
+		for(int i = 0; i < indent; i++) {
+			builder.append('\t');
+		}
+	}
+}
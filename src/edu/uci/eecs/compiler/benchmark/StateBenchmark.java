@@ -0,0 +1,81 @@
+package edu.uci.eecs.compiler.benchmark;
+
+import java.nio.ByteBuffer;
+
+import edu.uci.eecs.compiler.frontend.BufferScanner;
+import edu.uci.eecs.compiler.frontend.Parser;
+import edu.uci.eecs.compiler.model.CompilationContext;
+import edu.uci.eecs.compiler.model.Program;
+
+/**
+ * SSA construction on a procedure with 5k local variables and 10k blocks.
+ * Every if statement takes three blocks and every block takes a begin and an end
+ * State, so the cost of State snapshots dominates the run.
+ *
+ * Usage: StateBenchmark [variables] [blocks] [rounds]
+ *
+ */
+public class StateBenchmark {
+
+	public static void main(String[] args) {
+		int variables = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		int blocks = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		byte[] source = generate(variables, blocks / 3);
+		System.out.println("variables: " + variables + ", blocks: " + blocks + ", source bytes: " + source.length);
+
+		for(int round = 0; round < rounds; round++) {
+			System.gc();
+			long startTime = System.nanoTime();
+			Program program = parse(source);
+			long elapsed = System.nanoTime() - startTime;
+
+			System.gc();
+			Runtime runtime = Runtime.getRuntime();
+			long retained = runtime.totalMemory() - runtime.freeMemory();
+			System.out.println("round " + round + ": " + elapsed / 1000000 + " ms, heap after parse "
+					+ retained / (1024 * 1024) + " MB, methods " + program.getMethods().size());
+		}
+	}
+
+	private static Program parse(byte[] source) {
+		CompilationContext context = new CompilationContext();
+		BufferScanner scanner = new BufferScanner(ByteBuffer.wrap(source), context.getInterner());
+		Parser parser = new Parser(scanner, new Program(context));
+		return parser.parseProgram();
+	}
+
+	/**
+	 * main
+	 * procedure work();
+	 * var v0, v1, ...;
+	 * { if vi < vj then let vi <- vi + 1 else let vj <- vj + 1 fi; ... };
+	 * { call work() }.
+	 */
+	static byte[] generate(int variables, int statements) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("main\nprocedure work();\nvar v0");
+		for(int i = 1; i < variables; i++) {
+			builder.append(", v").append(i);
+		}
+		builder.append(";\n{\n");
+		for(int i = 0; i < statements; i++) {
+			int left = i % variables;
+			int right = (i * 7 + 1) % variables;
+			if(i > 0) {
+				builder.append(";\n");
+			}
+			builder.append("\tif v").append(left).append(" < v").append(right)
+				.append(" then let v").append(left).append(" <- v").append(left).append(" + 1")
+				.append(" else let v").append(right).append(" <- v").append(right).append(" + 1 fi");
+		}
+		builder.append("\n};\n{\n\tcall work()\n}.\n");
+
+		byte[] source = new byte[builder.length()];
+		for(int i = 0; i < source.length; i++) {
+			source[i] = (byte)builder.charAt(i);
+		}
+		return source;
+	}
+}
@@ -4,42 +4,65 @@ package edu.uci.eecs.compiler.dlx;
 
 import java.io.*;
 
+import edu.uci.eecs.compiler.util.CompilerEvents.ExecuteEvent;
 
-// All variables and methods are realized as class variables/methods which
-// means that just one processor can be emulated at a time.
+
+// The processor state is kept in the instance, so several processors can be
+// emulated at the same time. Assembling instructions needs no state.
 
 public class DLX {
 	// processor state variables
-	static int R[] = new int [32];
-	static int PC, op, a, b, c, format; 
+	int R[] = new int [32];
+	int PC, op, a, b, c, format; 
 	
 	// emulated memory
 	static final int MemSize = 10000; // bytes in memory (divisible by 4)
-	static int M[] = new int [MemSize/4];
+	int M[] = new int [MemSize/4];
+	int programSize;
+	long executed; // instructions executed by the last run
 
     
 	public static void main(String argv[]) {
 	}
 
-	public static void load(int program[]) {
+	public void load(int program[]) {
 		int i;
 		for (i = 0; i < program.length; i++) {
 			M[i] = program[i];
 		}
 		M[i] = -1; // set first opcode of first instruction after program
 		           // to ERR in order to detect 'fall off the edge' errors
+		programSize = program.length;
+	}
+	
+	// a run is recorded as a JFR event, see CompilerEvents
+	public void execute() throws IOException {
+		ExecuteEvent event = new ExecuteEvent();
+		event.begin();
+		try {
+			run();
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.programSize = programSize;
+				event.executedInstructions = executed;
+				event.commit();
+			}
+		}
 	}
 	
-	public static void execute() throws IOException {
+	private void run() throws IOException {
 		int origc = 0; // used for F2 instruction RET
 		for (int i = 0; i < 32; i++) { R[i] = 0; };
 		PC = 0; R[30] = MemSize - 1;
+		executed = 0;
 
 		try {
 
 		execloop:
 		while (true) {
 			R[0] = 0;
+			executed++;
 			disassem(M[PC]); // initializes op, a, b, c
 			
 			int nextPC = PC + 1;
@@ -299,7 +322,7 @@ public class DLX {
 	static final int ERR = 63; // error opcode which is insertered by loader 
 	                           // after end of program code
 
-	static void disassem(int instructionWord) {
+	void disassem(int instructionWord) {
 		op = instructionWord >>> 26; // without sign extension
 		switch (op) {	
 			
@@ -375,7 +398,7 @@ public class DLX {
 		}
 	}
 	
-	static String disassemble(int instructionWord) {
+	String disassemble(int instructionWord) {
 		
 		disassem(instructionWord);
 		String line = mnemo[op] + "  ";
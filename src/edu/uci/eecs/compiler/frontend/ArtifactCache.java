@@ -0,0 +1,233 @@
+package edu.uci.eecs.compiler.frontend;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * On disk cache of compiled graphs. An artifact is stored under the SHA-256 of the
+ * source bytes and of the options that change the output, so identical sources are
+ * compiled once. The artifact starts with what the compilation printed, a line with
+ * its length in bytes and the text, followed by the graph.
+ *
+ * Artifacts are written to a temporary file and renamed, a reader never sees a partial
+ * artifact even if several compilers share the directory. A hit touches the file, when
+ * the directory grows over its size the least recently used artifacts are deleted.
+ *
+ */
+public class ArtifactCache {
+
+	//change it when the format of the artifacts changes
+	private static final String VERSION = "2";
+	private static final String EXTENSION = ".dot";
+
+	private File directory;
+	private long maximalSize;
+	private AtomicLong size;
+	private AtomicInteger hits;
+	private AtomicInteger misses;
+
+	public ArtifactCache(File directory, long maximalSize) throws IOException {
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can't create the cache directory " + directory);
+		}
+		this.directory = directory;
+		this.maximalSize = maximalSize;
+		this.size = new AtomicLong(directorySize());
+		this.hits = new AtomicInteger();
+		this.misses = new AtomicInteger();
+	}
+
+	public String key(byte[] source, CompilerOptions options) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		String settings = VERSION + ";" + options.getScannerMode() + ";" + options.getSSAMode() + ";";
+		if(options.getPasses() != null) {
+			settings += "passes=" + options.getPasses() + ";";
+		}
+		if(options.isStreaming()) {
+			//the methods are written in another order
+			settings += "streaming;";
+		}
+		for(int i = 0; i < settings.length(); i++) {
+			digest.update((byte)settings.charAt(i));
+		}
+		digest.update(source);
+
+		StringBuilder key = new StringBuilder();
+		for(byte b : digest.digest()) {
+			key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Copy the graph of the key to the target.
+	 * @return what the compilation printed, null if the artifact is not in the cache
+	 */
+	public String fetch(String key, File target) throws IOException {
+		File artifact = artifactFile(key);
+		FileInputStream in;
+		try {
+			in = new FileInputStream(artifact);
+		} catch (IOException e) {
+			misses.incrementAndGet();
+			return null;
+		}
+		String messages;
+		try {
+			DataInputStream header = new DataInputStream(in);
+			byte[] content = new byte[readLength(in)];
+			header.readFully(content);
+			messages = new String(content, "UTF-8");
+			copy(in, target);
+		} finally {
+			in.close();
+		}
+		artifact.setLastModified(System.currentTimeMillis());
+		hits.incrementAndGet();
+		return messages;
+	}
+
+	/**
+	 * Store the graph and what its compilation printed. An artifact already in the cache
+	 * is the same, it is not written again.
+	 */
+	public void store(String key, File artifact, String messages) throws IOException {
+		File target = artifactFile(key);
+		if(target.exists()) {
+			return;
+		}
+		File temporary = File.createTempFile(key, ".tmp", directory);
+		byte[] content = messages.getBytes("UTF-8");
+		FileOutputStream out = new FileOutputStream(temporary);
+		FileInputStream in = new FileInputStream(artifact);
+		try {
+			out.write((content.length + "\n").getBytes("US-ASCII"));
+			out.write(content);
+			copy(in, out);
+		} finally {
+			in.close();
+			out.close();
+		}
+
+		long length = temporary.length();
+		//another compiler may have stored it in the meantime
+		long replaced = target.length();
+		if(temporary.renameTo(target)) {
+			if(size.addAndGet(length - replaced) > maximalSize) {
+				evict();
+			}
+		} else if(!temporary.delete()) {
+			temporary.deleteOnExit();
+		}
+	}
+
+	public int getHits() {
+		return hits.get();
+	}
+
+	public int getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Delete the least recently used artifacts until the cache is under 90% of its size.
+	 * The directory is listed again, other compilers may have added or deleted files.
+	 */
+	private synchronized void evict() {
+		File[] artifacts = artifacts();
+		long total = 0;
+		for(File artifact : artifacts) {
+			total += artifact.length();
+		}
+		if(total > maximalSize) {
+			Arrays.sort(artifacts, new Comparator<File>() {
+				public int compare(File first, File second) {
+					long difference = first.lastModified() - second.lastModified();
+					return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+				}
+			});
+			long bound = maximalSize / 10 * 9;
+			for(int i = 0; i < artifacts.length && total > bound; i++) {
+				long length = artifacts[i].length();
+				if(artifacts[i].delete()) {
+					total -= length;
+				}
+			}
+		}
+		size.set(total);
+	}
+
+	private long directorySize() {
+		long total = 0;
+		for(File artifact : artifacts()) {
+			total += artifact.length();
+		}
+		return total;
+	}
+
+	private File[] artifacts() {
+		File[] artifacts = directory.listFiles(new java.io.FileFilter() {
+			public boolean accept(File file) {
+				return file.getName().endsWith(EXTENSION);
+			}
+		});
+		return artifacts != null ? artifacts : new File[0];
+	}
+
+	private File artifactFile(String key) {
+		return new File(directory, key + EXTENSION);
+	}
+
+	/**
+	 * @return the number on the first line of the artifact
+	 */
+	private static int readLength(FileInputStream in) throws IOException {
+		int length = 0;
+		int c = in.read();
+		while(c >= '0' && c <= '9') {
+			length = length * 10 + c - '0';
+			c = in.read();
+		}
+		if(c != '\n') {
+			throw new IOException("Corrupt artifact");
+		}
+		return length;
+	}
+
+	private static void copy(FileInputStream in, File target) throws IOException {
+		FileOutputStream out = new FileOutputStream(target);
+		try {
+			copy(in, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Copy the rest of the input, from its current position.
+	 */
+	private static void copy(FileInputStream in, FileOutputStream out) throws IOException {
+		FileChannel source = in.getChannel();
+		FileChannel destination = out.getChannel();
+		long position = source.position();
+		long length = source.size();
+		while(position < length) {
+			position += source.transferTo(position, length - position, destination);
+		}
+	}
+}
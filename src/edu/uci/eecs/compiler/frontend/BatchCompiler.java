@@ -0,0 +1,136 @@
+package edu.uci.eecs.compiler.frontend;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles many files on one JVM. The inputs are files and directories, for a
+ * directory every .txt file in it is compiled. The graph of a.txt is written to a.dot
+ * in the same directory.
+ *
+ * The files are compiled on a fixed number of threads. The queue of the executor is
+ * bounded, when it is full the submitting thread compiles the file itself.
+ * At the end the throughput and the 50th and 99th percentile of the latency per file
+ * are printed, and the hits and misses of the artifact cache if there is one.
+ *
+ */
+public class BatchCompiler {
+
+	private static final String SOURCE_EXTENSION = ".txt";
+	private static final String GRAPH_EXTENSION = ".dot";
+
+	private CompilerOptions options;
+	private AtomicInteger failures;
+	private ArtifactCache cache;
+
+	public BatchCompiler(CompilerOptions options) {
+		this.options = options;
+		this.failures = new AtomicInteger();
+	}
+
+	public void run() throws IOException {
+		cache = Compiler.createCache(options);
+		List<File> files = collectFiles(options.getFiles());
+		if(files.isEmpty()) {
+			System.out.println("No files to compile!");
+			return;
+		}
+
+		final long[] latencies = new long[files.size()];
+		int threads = Math.max(1, options.getThreads());
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+
+		long startTime = System.nanoTime();
+		for(int i = 0; i < files.size(); i++) {
+			final int index = i;
+			final File file = files.get(i);
+			executor.execute(new Runnable() {
+				public void run() {
+					latencies[index] = compile(file);
+				}
+			});
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.out.println("Batch compilation interrupted!");
+			return;
+		}
+		long elapsed = System.nanoTime() - startTime;
+
+		printReport(latencies, elapsed, threads);
+	}
+
+	/**
+	 * @return time to compile the file in nanoseconds
+	 */
+	private long compile(File file) {
+		long startTime = System.nanoTime();
+		try {
+			Compiler.compile(file.getPath(), graphFileName(file), options, cache);
+		} catch (Exception e) {
+			failures.incrementAndGet();
+			System.out.println("Failed to compile " + file + ": " + e);
+		}
+		return System.nanoTime() - startTime;
+	}
+
+	private static String graphFileName(File file) {
+		String path = file.getPath();
+		if(path.endsWith(SOURCE_EXTENSION)) {
+			path = path.substring(0, path.length() - SOURCE_EXTENSION.length());
+		}
+		return path + GRAPH_EXTENSION;
+	}
+
+	private static List<File> collectFiles(List<String> names) {
+		List<File> files = new ArrayList<File>();
+		for(String name : names) {
+			File file = new File(name);
+			if(file.isDirectory()) {
+				File[] children = file.listFiles();
+				if(children == null) {
+					continue;
+				}
+				Arrays.sort(children);
+				for(File child : children) {
+					if(child.isFile() && child.getName().endsWith(SOURCE_EXTENSION)) {
+						files.add(child);
+					}
+				}
+			} else {
+				files.add(file);
+			}
+		}
+		return files;
+	}
+
+	private void printReport(long[] latencies, long elapsed, int threads) {
+		long[] sorted = latencies.clone();
+		Arrays.sort(sorted);
+		double seconds = elapsed / 1e9;
+		System.out.println("files: " + latencies.length + ", failed: " + failures.get() + ", threads: " + threads);
+		System.out.println(String.format("time: %.3f s, throughput: %.1f files/s", seconds, latencies.length / seconds));
+		System.out.println(String.format("latency p50: %.3f ms, p99: %.3f ms, max: %.3f ms",
+				percentile(sorted, 50) / 1e6, percentile(sorted, 99) / 1e6, sorted[sorted.length - 1] / 1e6));
+		if(cache != null) {
+			System.out.println("cache hits: " + cache.getHits() + ", misses: " + cache.getMisses());
+		}
+	}
+
+	//nearest rank
+	private static long percentile(long[] sorted, int percent) {
+		int rank = (int)Math.ceil(percent / 100.0 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+}
@@ -0,0 +1,600 @@
+package edu.uci.eecs.compiler.frontend;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import edu.uci.eecs.compiler.util.CompilerEvents.ScanEvent;
+import edu.uci.eecs.compiler.util.Interner;
+import edu.uci.eecs.compiler.util.Token;
+
+/**
+ * Hand written scanner that works straight over the bytes of the source file.
+ *
+ * Small files are read into a heap buffer, large files are memory mapped. A token
+ * is only a kind plus an offset/length span into the buffer, numbers are parsed
+ * into int directly and keywords are found with a perfect hash. Identifiers are
+ * interned straight from the bytes, so a String is only created the first time an
+ * identifier is seen.
+ *
+ * It keeps the contract of Scanner: getCurrentNumber() returns the last number
+ * scanned, even after the NUMBER token is consumed, because parseTypeDeclaration
+ * reads the dimension after consuming it.
+ *
+ * Tokens are scanned one at a time between the parsing, so a scan event covers a batch
+ * of tokens and its scan time only counts the time spent scanning them. A peek keeps
+ * the state after every token it scans in a ring, nextToken takes them from there, so
+ * a token is scanned once however far the Parser looks ahead.
+ *
+ */
+public class BufferScanner extends Scanner {
+
+	//files smaller than it are read into heap, mapping costs more for them
+	private static final int MAP_THRESHOLD = 64 * 1024;
+
+	private static final int EVENT_BATCH = 1024;
+	private static final int AHEAD_SIZE = 32;
+
+	/*
+	 * (3 * first + length) & 31 has no collision for the fifteen keywords,
+	 * the table is verified when it is built.
+	 */
+	private static final int KEYWORD_TABLE_SIZE = 32;
+	private static final byte[][] keywordTable = new byte[KEYWORD_TABLE_SIZE][];
+	private static final Token[] keywordTokens = new Token[KEYWORD_TABLE_SIZE];
+
+	static {
+		addKeyword("main", Token.MAIN);
+		addKeyword("function", Token.FUNCTION);
+		addKeyword("procedure", Token.PROCEDURE);
+		addKeyword("array", Token.ARRAY);
+		addKeyword("var", Token.VAR);
+		addKeyword("return", Token.RETURN);
+		addKeyword("while", Token.WHILE);
+		addKeyword("if", Token.IF);
+		addKeyword("call", Token.CALL);
+		addKeyword("let", Token.LET);
+		addKeyword("else", Token.ELSE);
+		addKeyword("fi", Token.FI);
+		addKeyword("do", Token.DO);
+		addKeyword("od", Token.OD);
+		addKeyword("then", Token.THEN);
+	}
+
+	private final ByteBuffer buffer;
+	private final Interner interner;
+	private final int limit;
+	private int position;
+	private int lineNumber;
+
+	private Token currentToken;
+	private int tokenOffset;
+	private int tokenLength;
+	private int tokenLine;
+	private int currentNumber;
+	private int currentId;
+	private boolean word;
+	private boolean pushedBack;
+
+	//states after the tokens scanned by peek, the next one is at aheadHead
+	private Mark[] ahead = new Mark[AHEAD_SIZE];
+	private int aheadHead;
+	private int aheadCount;
+	private Mark currentMark = new Mark();
+
+	//scan event of the current batch, null until the first token of the batch
+	private ScanEvent event;
+	private int eventTokens;
+	private long eventScanTime;
+
+	/**
+	 * Position of the scanner, the Parser looks ahead with it and comes back.
+	 */
+	public static class Mark {
+		private int position;
+		private int lineNumber;
+		private Token currentToken;
+		private int tokenOffset;
+		private int tokenLength;
+		private int tokenLine;
+		private int currentNumber;
+		private int currentId;
+		private boolean word;
+		private boolean pushedBack;
+	}
+
+	public BufferScanner(String fileName, Interner interner) throws IOException {
+		this(readSource(new File(fileName)), interner);
+	}
+
+	public BufferScanner(ByteBuffer buffer, Interner interner) {
+		this.buffer = buffer;
+		this.interner = interner;
+		this.limit = buffer.limit();
+		this.position = buffer.position();
+		this.lineNumber = 1;
+		nextToken();
+	}
+
+	private static void addKeyword(String keyword, Token token) {
+		int slot = (3 * keyword.charAt(0) + keyword.length()) & (KEYWORD_TABLE_SIZE - 1);
+		if(keywordTable[slot] != null) {
+			throw new RuntimeException("Keyword hash collision for " + keyword);
+		}
+		byte[] text = new byte[keyword.length()];
+		for(int i = 0; i < text.length; i++) {
+			text[i] = (byte)keyword.charAt(i);
+		}
+		keywordTable[slot] = text;
+		keywordTokens[slot] = token;
+	}
+
+	private static ByteBuffer readSource(File file) throws IOException {
+		FileInputStream stream = new FileInputStream(file);
+		try {
+			FileChannel channel = stream.getChannel();
+			long size = channel.size();
+			if(size >= MAP_THRESHOLD) {
+				//the mapping stays valid after the channel is closed
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate((int)size);
+			while(buffer.hasRemaining() && channel.read(buffer) >= 0) {
+			}
+			buffer.flip();
+			return buffer;
+		} finally {
+			stream.close();
+		}
+	}
+
+	@Override
+	public void nextToken() {
+		if(pushedBack) {
+			pushedBack = false;
+			return;
+		}
+		if(aheadCount > 0) {
+			restore(ahead[aheadHead]);
+			aheadHead = (aheadHead + 1) & (ahead.length - 1);
+			aheadCount--;
+			return;
+		}
+		scanToken();
+	}
+
+	/**
+	 * @return the token k tokens after the current one, peek(0) is the current token
+	 */
+	@Override
+	public Token peek(int k) {
+		Mark mark = peekMark(k);
+		return mark != null ? mark.currentToken : Token.EOF;
+	}
+
+	@Override
+	public int peekId(int k) {
+		Mark mark = peekMark(k);
+		return mark != null ? mark.currentId : currentId;
+	}
+
+	@Override
+	public int peekNumber(int k) {
+		Mark mark = peekMark(k);
+		return mark != null ? mark.currentNumber : currentNumber;
+	}
+
+	/**
+	 * Scan ahead from the last state in the ring and come back to the current token.
+	 * @return the state after the token k tokens ahead, null after the end of the source
+	 */
+	private Mark peekMark(int k) {
+		if(pushedBack && k > 0) {
+			k--;
+		}
+		if(k == 0) {
+			save(currentMark);
+			return currentMark;
+		}
+		if(aheadCount < k) {
+			Mark current = mark();
+			if(aheadCount > 0) {
+				restore(ahead[(aheadHead + aheadCount - 1) & (ahead.length - 1)]);
+			}
+			pushedBack = false;
+			while(aheadCount < k && currentToken != Token.EOF) {
+				if(aheadCount == ahead.length) {
+					growAhead();
+				}
+				scanToken();
+				int slot = (aheadHead + aheadCount) & (ahead.length - 1);
+				if(ahead[slot] == null) {
+					ahead[slot] = new Mark();
+				}
+				save(ahead[slot]);
+				aheadCount++;
+			}
+			restore(current);
+			if(aheadCount < k) {
+				return null;
+			}
+		}
+		return ahead[(aheadHead + k - 1) & (ahead.length - 1)];
+	}
+
+	/**
+	 * Double the ring for a peek further ahead than it holds.
+	 */
+	private void growAhead() {
+		Mark[] oldAhead = ahead;
+		ahead = new Mark[oldAhead.length * 2];
+		for(int i = 0; i < aheadCount; i++) {
+			ahead[i] = oldAhead[(aheadHead + i) & (oldAhead.length - 1)];
+		}
+		aheadHead = 0;
+	}
+
+	private void scanToken() {
+		if(event == null) {
+			event = new ScanEvent();
+			event.begin();
+		}
+		if(event.isEnabled()) {
+			long start = System.nanoTime();
+			scan();
+			eventScanTime += System.nanoTime() - start;
+		} else {
+			scan();
+		}
+		eventTokens++;
+		if(eventTokens == EVENT_BATCH || currentToken == Token.EOF) {
+			endEvent();
+		}
+	}
+
+	private void endEvent() {
+		if(event == null) {
+			return;
+		}
+		event.end();
+		if(event.shouldCommit()) {
+			event.tokens = eventTokens;
+			event.scanTime = eventScanTime;
+			event.commit();
+		}
+		event = null;
+		eventTokens = 0;
+		eventScanTime = 0;
+	}
+
+	/**
+	 * Commit the scan event of the last batch, the Parser stops at the period and
+	 * doesn't scan up to the end of the source.
+	 */
+	@Override
+	public void close() {
+		endEvent();
+		super.close();
+	}
+
+	private void scan() {
+		while(true) {
+			skipWhitespaceAndComments();
+			word = false;
+			tokenOffset = position;
+			tokenLine = lineNumber;
+			if(position >= limit) {
+				currentToken = Token.EOF;
+				tokenLength = 0;
+				return;
+			}
+
+			int c = buffer.get(position);
+			if(isLetter(c)) {
+				scanWord();
+				return;
+			} else if(isDigit(c)) {
+				scanNumber();
+				return;
+			} else if(scanSymbol(c)) {
+				tokenLength = position - tokenOffset;
+				return;
+			}
+
+			report("Unexpected character '" + (char)c + "' at line " + lineNumber);
+		}
+	}
+
+	private void skipWhitespaceAndComments() {
+		while(position < limit) {
+			int c = buffer.get(position);
+			if(c == '\n') {
+				lineNumber++;
+				position++;
+			} else if(c == ' ' || c == '\t' || c == '\r' || c == '\f') {
+				position++;
+			} else if(c == '#') {
+				skipLine();
+			} else if(c == '/' && position + 1 < limit && buffer.get(position + 1) == '/') {
+				skipLine();
+			} else if(c == '/' && position + 1 < limit && buffer.get(position + 1) == '*') {
+				position += 2;
+				while(position < limit && !(buffer.get(position) == '*'
+						&& position + 1 < limit && buffer.get(position + 1) == '/')) {
+					if(buffer.get(position) == '\n') {
+						lineNumber++;
+					}
+					position++;
+				}
+				position = Math.min(position + 2, limit);
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void skipLine() {
+		while(position < limit && buffer.get(position) != '\n') {
+			position++;
+		}
+	}
+
+	private void scanWord() {
+		position++;
+		while(position < limit) {
+			int c = buffer.get(position);
+			if(!isLetter(c) && !isDigit(c)) {
+				break;
+			}
+			position++;
+		}
+		tokenLength = position - tokenOffset;
+		word = true;
+		currentToken = lookupKeyword();
+		if(currentToken == Token.IDENTIFIER) {
+			currentId = interner.intern(buffer, tokenOffset, tokenLength);
+		}
+	}
+
+	private Token lookupKeyword() {
+		int slot = (3 * buffer.get(tokenOffset) + tokenLength) & (KEYWORD_TABLE_SIZE - 1);
+		byte[] keyword = keywordTable[slot];
+		if(keyword == null || keyword.length != tokenLength) {
+			return Token.IDENTIFIER;
+		}
+		for(int i = 0; i < tokenLength; i++) {
+			if(keyword[i] != buffer.get(tokenOffset + i)) {
+				return Token.IDENTIFIER;
+			}
+		}
+		return keywordTokens[slot];
+	}
+
+	private void scanNumber() {
+		int value = 0;
+		while(position < limit) {
+			int c = buffer.get(position);
+			if(!isDigit(c)) {
+				break;
+			}
+			value = value * 10 + (c - '0');
+			position++;
+		}
+		tokenLength = position - tokenOffset;
+		currentNumber = value;
+		currentToken = Token.NUMBER;
+	}
+
+	/**
+	 * @return false if c doesn't start any token
+	 */
+	private boolean scanSymbol(int c) {
+		position++;
+		switch(c) {
+			case '(':
+				currentToken = Token.OPENPARENTHESES;
+				return true;
+			case ')':
+				currentToken = Token.CLOSEPARENTHESES;
+				return true;
+			case '[':
+				currentToken = Token.OPENBRACKET;
+				return true;
+			case ']':
+				currentToken = Token.CLOSEBRACKET;
+				return true;
+			case '{':
+				currentToken = Token.BEGIN;
+				return true;
+			case '}':
+				currentToken = Token.END;
+				return true;
+			case '*':
+				currentToken = Token.TIMES;
+				return true;
+			case '/':
+				currentToken = Token.DIVIDE;
+				return true;
+			case '+':
+				currentToken = Token.PLUS;
+				return true;
+			case '-':
+				currentToken = Token.MINUS;
+				return true;
+			case ',':
+				currentToken = Token.COMMA;
+				return true;
+			case ';':
+				currentToken = Token.SEMICOLON;
+				return true;
+			case '.':
+				currentToken = Token.PERIOD;
+				return true;
+			case '<':
+				if(match('=')) {
+					currentToken = Token.LEQUAL;
+				} else if(match('-')) {
+					currentToken = Token.ASSIGNMENT;
+				} else {
+					currentToken = Token.LESS;
+				}
+				return true;
+			case '>':
+				currentToken = match('=') ? Token.GEQUAL : Token.GREATER;
+				return true;
+			case '=':
+				if(match('=')) {
+					currentToken = Token.EQUAL;
+					return true;
+				}
+				return false;
+			case '!':
+				if(match('=')) {
+					currentToken = Token.NEQUAL;
+					return true;
+				}
+				return false;
+			default:
+				return false;
+		}
+	}
+
+	private boolean match(int c) {
+		if(position < limit && buffer.get(position) == c) {
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+	private static boolean isLetter(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isDigit(int c) {
+		return c >= '0' && c <= '9';
+	}
+
+	@Override
+	public boolean expectToken(Token token) {
+		return currentToken == token;
+	}
+
+	public Token getCurrentToken() {
+		return currentToken;
+	}
+
+	/**
+	 * The current token will be returned again by the next call of nextToken().
+	 */
+	@Override
+	public void pushBack() {
+		pushedBack = true;
+	}
+
+	@Override
+	public int getCurrentNumber() {
+		return currentNumber;
+	}
+
+	/**
+	 * Content of identifiers and keywords, null for other tokens as StreamTokenizer does.
+	 */
+	@Override
+	public String getCurrentContent() {
+		if(!word) {
+			return null;
+		} else if(currentToken == Token.IDENTIFIER) {
+			return interner.getName(currentId);
+		}
+
+		char[] content = new char[tokenLength];
+		for(int i = 0; i < tokenLength; i++) {
+			content[i] = (char)buffer.get(tokenOffset + i);
+		}
+		return new String(content);
+	}
+
+	@Override
+	public int getCurrentId() {
+		return currentId;
+	}
+
+	public Mark mark() {
+		Mark mark = new Mark();
+		save(mark);
+		return mark;
+	}
+
+	/**
+	 * Go back to the mark, the tokens peeked from here on are dropped.
+	 */
+	public void reset(Mark mark) {
+		aheadCount = 0;
+		restore(mark);
+	}
+
+	private void save(Mark mark) {
+		mark.position = position;
+		mark.lineNumber = lineNumber;
+		mark.currentToken = currentToken;
+		mark.tokenOffset = tokenOffset;
+		mark.tokenLength = tokenLength;
+		mark.tokenLine = tokenLine;
+		mark.currentNumber = currentNumber;
+		mark.currentId = currentId;
+		mark.word = word;
+		mark.pushedBack = pushedBack;
+	}
+
+	private void restore(Mark mark) {
+		position = mark.position;
+		lineNumber = mark.lineNumber;
+		currentToken = mark.currentToken;
+		tokenOffset = mark.tokenOffset;
+		tokenLength = mark.tokenLength;
+		tokenLine = mark.tokenLine;
+		currentNumber = mark.currentNumber;
+		currentId = mark.currentId;
+		word = mark.word;
+		pushedBack = mark.pushedBack;
+	}
+
+	/**
+	 * @return a scanner over the same source that starts at the mark
+	 */
+	public BufferScanner scannerAt(Mark mark) {
+		BufferScanner scanner = new BufferScanner(buffer.duplicate(), interner);
+		scanner.reset(mark);
+		scanner.setContext(getContext());
+		return scanner;
+	}
+
+	public int getTokenOffset() {
+		return tokenOffset;
+	}
+
+	public int getTokenLength() {
+		return tokenLength;
+	}
+
+	@Override
+	public int getLineNumber() {
+		return tokenLine;
+	}
+
+	@Override
+	public void print() {
+		while(currentToken != Token.EOF) {
+			if(currentToken == Token.NUMBER) {
+				System.out.println(currentToken.name() + ": " + currentNumber);
+			} else {
+				System.out.println(currentToken.name() + ": " + getCurrentContent());
+			}
+			nextToken();
+		}
+	}
+}
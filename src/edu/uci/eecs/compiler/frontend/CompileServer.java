@@ -0,0 +1,268 @@
+package edu.uci.eecs.compiler.frontend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import edu.uci.eecs.compiler.model.CompilationContext;
+import edu.uci.eecs.compiler.model.Method;
+import edu.uci.eecs.compiler.model.Program;
+import edu.uci.eecs.compiler.optimization.PassManager;
+import edu.uci.eecs.compiler.util.Interner;
+
+/**
+ * Long running compiler, so the JIT stays warm between compilations.
+ * It reads requests from stdin or from TCP connections on the loopback interface.
+ *
+ * Every request and response is a frame, a header line with the length of the
+ * content in bytes followed by the content:
+ *   COMPILE n\n<source>          compile the source
+ *   QUIT\n                       end the session
+ * answered by zero or more diagnostics and the result:
+ *   DIAGNOSTIC n\n<message>
+ *   OK n\n<graph>  or  ERROR n\n<message>
+ * A malformed header is answered by ERROR and ends the session.
+ *
+ * Connections are served on a fixed number of threads with a bounded queue. A
+ * connection holds its thread for the whole session, so at most threads + queue
+ * connections are open at a time. When they are all taken no more connections are
+ * accepted, the clients wait in the backlog of the socket. A connection that sends
+ * nothing for IDLE_TIMEOUT milliseconds is closed so it can't keep a thread forever.
+ * Every thread keeps its source buffer, interner and output buffer between requests.
+ *
+ * With -incremental every session keeps the methods of its last request, a function
+ * that didn't change is not parsed again. Every response then has a diagnostic with the
+ * number of functions taken from the session and the number parsed.
+ *
+ */
+public class CompileServer {
+
+	private static final String STDIN = "stdin";
+	private static final int QUEUE_PER_THREAD = 4;
+	private static final int IDLE_TIMEOUT = 60000;
+
+	private CompilerOptions options;
+	private ThreadLocal<Workspace> workspaces;
+
+	/**
+	 * Buffers reused by the requests of one thread.
+	 */
+	private static class Workspace {
+		private ByteBuffer source = ByteBuffer.allocate(1 << 16);
+		private Interner interner = new Interner();
+		private ByteArrayOutputStream output = new ByteArrayOutputStream(1 << 16);
+
+		private ByteBuffer sourceBuffer(int length) {
+			if(source.capacity() < length) {
+				source = ByteBuffer.allocate(Math.max(length, source.capacity() * 2));
+			}
+			source.clear();
+			source.limit(length);
+			return source;
+		}
+	}
+
+	public CompileServer(CompilerOptions options) {
+		this.options = options;
+		this.workspaces = new ThreadLocal<Workspace>() {
+			@Override
+			protected Workspace initialValue() {
+				return new Workspace();
+			}
+		};
+	}
+
+	public void start() throws IOException {
+		if(STDIN.equals(options.getServer())) {
+			//stdout carries the responses, anything else printed goes to stderr
+			PrintStream stdout = System.out;
+			System.setOut(System.err);
+			serve(System.in, stdout);
+			stdout.flush();
+		} else {
+			listen(Integer.parseInt(options.getServer()));
+		}
+	}
+
+	private void listen(int port) throws IOException {
+		int threads = Math.max(1, options.getThreads());
+		int queueSize = threads * QUEUE_PER_THREAD;
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize));
+		final Semaphore permits = new Semaphore(threads + queueSize);
+
+		ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+		System.out.println("Compile server listening on " + serverSocket.getLocalSocketAddress());
+		try {
+			while(true) {
+				permits.acquireUninterruptibly();
+				final Socket socket = serverSocket.accept();
+				executor.execute(new Runnable() {
+					public void run() {
+						try {
+							socket.setSoTimeout(IDLE_TIMEOUT);
+							serve(socket.getInputStream(), socket.getOutputStream());
+						} catch (SocketTimeoutException e) {
+							System.out.println("Connection idle, closed: " + socket.getRemoteSocketAddress());
+						} catch (IOException e) {
+							System.out.println("Connection failed: " + e);
+						} finally {
+							try {
+								socket.close();
+							} catch (IOException e) {
+								//already closed
+							}
+							permits.release();
+						}
+					}
+				});
+			}
+		} finally {
+			serverSocket.close();
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Serve the requests of one session until QUIT or the end of the input.
+	 */
+	public void serve(InputStream input, OutputStream output) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+		OutputStream out = new BufferedOutputStream(output);
+		FunctionCache functionCache = options.isIncremental() ? new FunctionCache() : null;
+		while(true) {
+			String header = readLine(in);
+			if(header == null || header.equals("QUIT")) {
+				break;
+			}
+			if(header.length() == 0) {
+				continue;
+			}
+			if(!header.startsWith("COMPILE ")) {
+				writeFrame(out, "ERROR", ("Unknown request: " + header).getBytes("US-ASCII"));
+				break;
+			}
+
+			int length = parseLength(header.substring("COMPILE ".length()).trim());
+			if(length < 0) {
+				writeFrame(out, "ERROR", ("Invalid length: " + header).getBytes("US-ASCII"));
+				break;
+			}
+			Workspace workspace = workspaces.get();
+			ByteBuffer source = workspace.sourceBuffer(length);
+			in.readFully(source.array(), 0, length);
+			compile(workspace, source, out, functionCache);
+			out.flush();
+		}
+		out.flush();
+	}
+
+	private void compile(Workspace workspace, ByteBuffer source, OutputStream out, FunctionCache functionCache)
+			throws IOException {
+		Interner interner = workspace.interner;
+		if(functionCache != null) {
+			//the cached methods hold the ids of the session
+			interner = functionCache.getInterner();
+		} else {
+			interner.reset();
+		}
+		CompilationContext context = new CompilationContext(interner);
+		if(functionCache != null) {
+			functionCache.beginCompilation(context);
+		}
+		context.setPrintDiagnostics(false);
+		ByteArrayOutputStream graph = workspace.output;
+		graph.reset();
+		try {
+			Program program = new Program(context);
+			BufferScanner scanner = new BufferScanner(source, interner);
+			Parser parser = new Parser(scanner, program, options.getSSAMode());
+			parser.setFunctionCache(functionCache);
+			try {
+				parser.parseProgram();
+			} finally {
+				scanner.close();
+			}
+			if(functionCache != null) {
+				context.report("Functions reused: " + functionCache.getReused()
+						+ ", rebuilt: " + functionCache.getRebuilt());
+			}
+			if(options.getPasses() != null) {
+				//a reused method was optimized by the request that parsed it
+				PassManager passes = PassManager.createPipeline(options.getPasses());
+				for(Method method : program.getMethods()) {
+					if(functionCache == null || !functionCache.isReused(method)) {
+						passes.run(method);
+					}
+				}
+			}
+
+			Writer writer = new OutputStreamWriter(graph, "US-ASCII");
+			program.toGraph(writer);
+			writer.flush();
+		} catch (Exception e) {
+			writeDiagnostics(out, context);
+			writeFrame(out, "ERROR", e.toString().getBytes("US-ASCII"));
+			return;
+		}
+		writeDiagnostics(out, context);
+		out.write(("OK " + graph.size() + "\n").getBytes("US-ASCII"));
+		graph.writeTo(out);
+	}
+
+	private static void writeDiagnostics(OutputStream out, CompilationContext context) throws IOException {
+		for(String diagnostic : context.getDiagnostics()) {
+			writeFrame(out, "DIAGNOSTIC", diagnostic.getBytes("US-ASCII"));
+		}
+	}
+
+	private static void writeFrame(OutputStream out, String kind, byte[] content) throws IOException {
+		out.write((kind + " " + content.length + "\n").getBytes("US-ASCII"));
+		out.write(content);
+	}
+
+	/**
+	 * @return the length of the content, -1 if it isn't a non negative number
+	 */
+	private static int parseLength(String length) {
+		try {
+			return Integer.parseInt(length);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return the header line without the line feed, null at the end of the input
+	 */
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int c = in.read();
+		if(c < 0) {
+			return null;
+		}
+		while(c >= 0 && c != '\n') {
+			if(c != '\r') {
+				line.append((char)c);
+			}
+			c = in.read();
+		}
+		return line.toString();
+	}
+}
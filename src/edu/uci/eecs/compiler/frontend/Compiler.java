@@ -1,15 +1,24 @@
 package edu.uci.eecs.compiler.frontend;
 
+import edu.uci.eecs.compiler.model.CompilationContext;
+import edu.uci.eecs.compiler.model.CompileStatistics;
+import edu.uci.eecs.compiler.model.Method;
 import edu.uci.eecs.compiler.model.Program;
 import edu.uci.eecs.compiler.frontend.Scanner;
 
-import edu.uci.eecs.compiler.optimization.CommonSubexpressionEliminator;
-import edu.uci.eecs.compiler.optimization.ConstantEvaluator;
-import edu.uci.eecs.compiler.optimization.DeadCodeEliminator;
-import edu.uci.eecs.compiler.optimization.UnreachableCodeEliminator;
+import edu.uci.eecs.compiler.optimization.PassManager;
+import edu.uci.eecs.compiler.util.Constant;
+import edu.uci.eecs.compiler.util.Interner;
 
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 
 public class Compiler {
 
@@ -17,38 +26,225 @@ public class Compiler {
 	 * @param args
 	 */
 	public static void main(String[] args) throws IOException {
-		if(args.length <= 1) {
+		CompilerOptions options = CompilerOptions.parse(args);
+		if(options.getServer() != null) {
+			new CompileServer(options).start();
+			return;
+		}
+		if(options.isBatch()) {
+			new BatchCompiler(options).run();
+			return;
+		}
+		if(options.getFiles().size() <= 1) {
 			System.out.println("Please input file name to compile and execute!");
 			System.exit(-1);
 		}
 		
-		Program program = parseAndBuildSSA(args[0]);
-		FileWriter writer = new FileWriter(args[1]);
-		String graph = program.toGraph();
-		System.out.println(graph);
-		writer.write(graph);
-		writer.close();
+		ArtifactCache cache = createCache(options);
+		compile(options.getFiles().get(0), options.getFiles().get(1), options, cache);
+		if(cache != null) {
+			System.out.println("cache hits: " + cache.getHits() + ", misses: " + cache.getMisses());
+		}
 	}
 	
+	/**
+	 * @return the cache of the options or null if there is none
+	 */
+	public static ArtifactCache createCache(CompilerOptions options) throws IOException {
+		if(options.getCacheDirectory() == null) {
+			return null;
+		}
+		return new ArtifactCache(new File(options.getCacheDirectory()), options.getCacheSize());
+	}
 	
-	private static Program parseAndBuildSSA(String fileName){
-		Scanner scanner = new Scanner(fileName);
-		Program program = new Program();
-		Parser parser = new Parser(scanner, program);
-		return parser.parseProgram();
+	public static void compile(String fileName, String graphFileName, CompilerOptions options) throws IOException {
+		compile(fileName, graphFileName, options, null);
 	}
 	
-	private static void optimize(Program program) {
-		ConstantEvaluator evaluator = new ConstantEvaluator(program);
-		CommonSubexpressionEliminator csEliminator = new CommonSubexpressionEliminator(program);
-		DeadCodeEliminator dcEliminator = new DeadCodeEliminator(program);
-		UnreachableCodeEliminator ucEliminator = new UnreachableCodeEliminator(program);
-		
-		
-		csEliminator.optimize();
-		dcEliminator.optimize();
-		ucEliminator.optimize();
+	/**
+	 * Compile one file, every call uses its own CompilationContext so files can be
+	 * compiled concurrently. With a cache the graph of an identical source compiled
+	 * before is copied from the cache and the file is not parsed at all, the diagnostics
+	 * and the phi report stored with it are printed again.
+	 *
+	 * With -stats the time and the IR size of every phase are written as JSON beside the
+	 * graph, see statisticsFileName. The report needs the phases to run, so the cache is
+	 * not read, the graph is only stored.
+	 */
+	public static void compile(String fileName, String graphFileName, CompilerOptions options, ArtifactCache cache) throws IOException {
+		String key = null;
+		File graphFile = new File(graphFileName);
+		if(cache != null) {
+			key = cache.key(readFile(new File(fileName)), options);
+			String messages = options.isStatistics() ? null : cache.fetch(key, graphFile);
+			if(messages != null) {
+				System.out.print(messages);
+				if(options.isEcho()) {
+					System.out.write(readFile(graphFile));
+					System.out.flush();
+				}
+				return;
+			}
+		}
 		
+		CompileStatistics statistics = options.isStatistics()
+				? new CompileStatistics(options.isAllocationStatistics()) : null;
+		CompileStatistics.Measurement total = statistics != null ? statistics.begin("compile", null) : null;
+		//what is printed, stored with the graph
+		StringBuilder messages = new StringBuilder();
+		if(options.isStreaming()) {
+			compileStreaming(fileName, graphFileName, options, statistics, messages);
+		} else {
+			Program program = parseAndBuildSSA(fileName, options, statistics);
+			appendDiagnostics(messages, program.getContext());
+			if(options.getPasses() != null) {
+				PassManager.createPipeline(options.getPasses()).run(program);
+			}
+			if(options.getSSAMode() == CompilerOptions.SSAMode.PRUNED) {
+				for(Method method : program.getMethods()) {
+					printPhiReduction(method, messages);
+				}
+			}
+			CompileStatistics.Measurement emit = statistics != null ? statistics.begin("emit", null) : null;
+			GraphWriter graphWriter = new GraphWriter(options.getGraphThreads(), options.isEcho());
+			graphWriter.write(program, graphFileName);
+			if(emit != null) {
+				emit.end(null);
+			}
+		}
+		if(cache != null) {
+			cache.store(key, graphFile, messages.toString());
+		}
+		if(statistics != null) {
+			total.end(null);
+			writeStatistics(statistics, fileName, statisticsFileName(graphFileName), options);
+		}
+	}
+	
+	/**
+	 * @return name of the graph with .json instead of .dot
+	 */
+	public static String statisticsFileName(String graphFileName) {
+		if(graphFileName.endsWith(".dot")) {
+			graphFileName = graphFileName.substring(0, graphFileName.length() - ".dot".length());
+		}
+		return graphFileName + ".json";
+	}
+	
+	private static void writeStatistics(CompileStatistics statistics, String fileName, String statisticsFileName,
+			CompilerOptions options) throws IOException {
+		LinkedHashMap<String, String> properties = new LinkedHashMap<String, String>();
+		properties.put("file", fileName);
+		properties.put("scanner", options.getScannerMode().toString().toLowerCase());
+		properties.put("ssa", options.getSSAMode().toString().toLowerCase());
+		properties.put("passes", options.getPasses() != null ? options.getPasses() : "");
+		properties.put("streaming", String.valueOf(options.isStreaming()));
+		Writer writer = new BufferedWriter(new FileWriter(statisticsFileName));
+		try {
+			statistics.toJson(writer, properties);
+		} finally {
+			writer.close();
+		}
+	}
+	
+	private static void appendDiagnostics(StringBuilder messages, CompilationContext context) {
+		for(String diagnostic : context.getDiagnostics()) {
+			messages.append(diagnostic).append(Constant.LINE_SEPARATER);
+		}
+	}
+	
+	private static byte[] readFile(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			byte[] content = new byte[(int)file.length()];
+			in.readFully(content);
+			return content;
+		} finally {
+			in.close();
+		}
+	}
+	
+	private static Program parseAndBuildSSA(String fileName, CompilerOptions options, CompileStatistics statistics)
+			throws IOException {
+		CompilationContext context = new CompilationContext();
+		context.setStatistics(statistics);
+		Scanner scanner = createScanner(fileName, options, context.getInterner());
+		try {
+			Program program = new Program(context);
+			Parser parser = new Parser(scanner, program, options.getSSAMode());
+			parser.setParseThreads(options.getParseThreads());
+			return parser.parseProgram();
+		} finally {
+			scanner.close();
+		}
+	}
+	
+	/**
+	 * Optimize every method and write its graph as soon as the parser has built it, then
+	 * drop the method. Only the globals and the method being parsed are in memory at any time,
+	 * so the peak heap follows the largest method instead of the program. The methods
+	 * are written in source order. The diagnostics are put before the phi report in the
+	 * messages.
+	 */
+	private static void compileStreaming(String fileName, String graphFileName, final CompilerOptions options,
+			final CompileStatistics statistics, final StringBuilder messages) throws IOException {
+		CompilationContext context = new CompilationContext();
+		context.setStatistics(statistics);
+		Scanner scanner = createScanner(fileName, options, context.getInterner());
+		final PassManager passManager = options.getPasses() != null ? PassManager.createPipeline(options.getPasses()) : null;
+		final Writer writer = new GraphWriter(1, options.isEcho()).open(graphFileName);
+		final StringBuilder phis = new StringBuilder();
+		try {
+			Parser parser = new Parser(scanner, new Program(context), options.getSSAMode());
+			parser.setParseThreads(options.getParseThreads());
+			parser.setMethodListener(new Parser.MethodListener() {
+				public void methodBuilt(Method method) {
+					if(passManager != null) {
+						passManager.run(method);
+					}
+					if(options.getSSAMode() == CompilerOptions.SSAMode.PRUNED) {
+						printPhiReduction(method, phis);
+					}
+					CompileStatistics.Measurement emit = statistics != null ? statistics.begin("emit", method) : null;
+					try {
+						method.toGraph(writer);
+						writer.write(Constant.LINE_SEPARATER);
+						if(emit != null) {
+							emit.end(method);
+						}
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+			parser.parseProgram();
+			appendDiagnostics(messages, context);
+			messages.append(phis);
+		} catch (RuntimeException e) {
+			if(e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw e;
+		} finally {
+			writer.close();
+			scanner.close();
+		}
+	}
+	
+	private static void printPhiReduction(Method method, StringBuilder messages) {
+		int minimal = method.getPhiNumber() + method.getSuppressedPhiNumber();
+		double reduction = minimal == 0 ? 0 : method.getSuppressedPhiNumber() * 100.0 / minimal;
+		String message = "phis " + method.getName() + ": minimal " + minimal + ", pruned "
+				+ method.getPhiNumber() + String.format(Locale.ROOT, " (-%.1f%%)", reduction);
+		System.out.println(message);
+		messages.append(message).append(Constant.LINE_SEPARATER);
+	}
+	
+	private static Scanner createScanner(String fileName, CompilerOptions options, Interner interner) throws IOException {
+		if(options.getScannerMode() == CompilerOptions.ScannerMode.BUFFER) {
+			return new BufferScanner(fileName, interner);
+		}
+		return new Scanner(fileName, interner);
 	}
 
 }
@@ -0,0 +1,259 @@
+package edu.uci.eecs.compiler.frontend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line options of the Compiler. Options start with '-', the others are files.
+ *
+ *   -scanner=stream|buffer   scanner on StreamTokenizer (default) or on the byte buffer
+ *   -ssa=classic|minimal|pruned
+ *                            phis for every symbol at joins (default), at the iterated
+ *                            dominance frontier of the definitions, or only there where
+ *                            the variable is live; pruned prints the phi count per method
+ *   -graph-threads=n         render the graphs of n methods in parallel (default 1)
+ *   -parse-threads=n         parse and build n functions in parallel (default 1), needs
+ *                            the buffer scanner
+ *   -passes=name,...         run the passes on every method, "default" is the standard
+ *                            pipeline, see PassManager for the names (default: none)
+ *   -streaming               write the graph of every method as soon as it is parsed
+ *                            and drop it, the methods are written in source order
+ *   -stats                   write the time and IR size of every phase and pass as JSON
+ *                            beside the graph, a.dot gets a.json
+ *   -alloc-stats             -stats with the bytes allocated by every phase and the IR
+ *                            objects retained by the method after it
+ *   -echo                    print the graph to stdout as well
+ *   -batch                   compile every file and every .txt file of the given
+ *                            directories, the graph is written beside the source
+ *   -threads=n               threads of the batch and server mode (default: number of
+ *                            processors)
+ *   -server=stdin|port       serve compile requests on stdin or on a local TCP port,
+ *                            see CompileServer for the protocol
+ *   -incremental             server sessions parse only the functions that changed
+ *                            since the last request, see FunctionCache
+ *   -cache=directory         reuse the graphs of sources compiled before, see ArtifactCache
+ *   -cache-size=megabytes    size of the cache directory (default 256)
+ *
+ */
+public class CompilerOptions {
+
+	public enum ScannerMode {
+		STREAM,
+		BUFFER
+	}
+
+	public enum SSAMode {
+		CLASSIC,
+		MINIMAL,
+		PRUNED
+	}
+
+	private ScannerMode scannerMode;
+	private SSAMode ssaMode;
+	private int graphThreads;
+	private int parseThreads;
+	private String passes;
+	private boolean streaming;
+	private boolean statistics;
+	private boolean allocationStatistics;
+	private boolean echo;
+	private boolean batch;
+	private int threads;
+	private String server;
+	private boolean incremental;
+	private String cacheDirectory;
+	private long cacheSize;
+	private List<String> files;
+
+	public CompilerOptions() {
+		this.scannerMode = ScannerMode.STREAM;
+		this.ssaMode = SSAMode.CLASSIC;
+		this.graphThreads = 1;
+		this.parseThreads = 1;
+		this.echo = false;
+		this.batch = false;
+		this.threads = Runtime.getRuntime().availableProcessors();
+		this.cacheSize = 256L * 1024 * 1024;
+		this.files = new ArrayList<String>();
+	}
+
+	public static CompilerOptions parse(String[] args) {
+		CompilerOptions options = new CompilerOptions();
+		for(String arg : args) {
+			if(arg.startsWith("-scanner=")) {
+				options.scannerMode = ScannerMode.valueOf(value(arg).toUpperCase());
+			} else if(arg.startsWith("-ssa=")) {
+				options.ssaMode = SSAMode.valueOf(value(arg).toUpperCase());
+			} else if(arg.startsWith("-graph-threads=")) {
+				options.graphThreads = Integer.parseInt(value(arg));
+			} else if(arg.startsWith("-parse-threads=")) {
+				options.parseThreads = Integer.parseInt(value(arg));
+			} else if(arg.startsWith("-passes=")) {
+				options.passes = value(arg);
+			} else if(arg.equals("-streaming")) {
+				options.streaming = true;
+			} else if(arg.equals("-stats")) {
+				options.statistics = true;
+			} else if(arg.equals("-alloc-stats")) {
+				options.statistics = true;
+				options.allocationStatistics = true;
+			} else if(arg.equals("-echo")) {
+				options.echo = true;
+			} else if(arg.equals("-batch")) {
+				options.batch = true;
+			} else if(arg.startsWith("-cache=")) {
+				options.cacheDirectory = value(arg);
+			} else if(arg.startsWith("-cache-size=")) {
+				options.cacheSize = Long.parseLong(value(arg)) * 1024 * 1024;
+			} else if(arg.startsWith("-server=")) {
+				options.server = value(arg);
+			} else if(arg.equals("-incremental")) {
+				options.incremental = true;
+			} else if(arg.startsWith("-threads=")) {
+				options.threads = Integer.parseInt(value(arg));
+			} else if(arg.startsWith("-")) {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			} else {
+				options.files.add(arg);
+			}
+		}
+		return options;
+	}
+
+	private static String value(String arg) {
+		return arg.substring(arg.indexOf('=') + 1);
+	}
+
+	public ScannerMode getScannerMode() {
+		return scannerMode;
+	}
+
+	public void setScannerMode(ScannerMode scannerMode) {
+		this.scannerMode = scannerMode;
+	}
+
+	public SSAMode getSSAMode() {
+		return ssaMode;
+	}
+
+	public void setSSAMode(SSAMode ssaMode) {
+		this.ssaMode = ssaMode;
+	}
+
+	public int getGraphThreads() {
+		return graphThreads;
+	}
+
+	public void setGraphThreads(int graphThreads) {
+		this.graphThreads = graphThreads;
+	}
+
+	public int getParseThreads() {
+		return parseThreads;
+	}
+
+	public void setParseThreads(int parseThreads) {
+		this.parseThreads = parseThreads;
+	}
+
+	/**
+	 * @return the pipeline of passes or null if the methods are not optimized
+	 */
+	public String getPasses() {
+		return passes;
+	}
+
+	public void setPasses(String passes) {
+		this.passes = passes;
+	}
+
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	public boolean isStatistics() {
+		return statistics;
+	}
+
+	public void setStatistics(boolean statistics) {
+		this.statistics = statistics;
+	}
+
+	public boolean isAllocationStatistics() {
+		return allocationStatistics;
+	}
+
+	public void setAllocationStatistics(boolean allocationStatistics) {
+		this.allocationStatistics = allocationStatistics;
+	}
+
+	public boolean isEcho() {
+		return echo;
+	}
+
+	public void setEcho(boolean echo) {
+		this.echo = echo;
+	}
+
+	public boolean isBatch() {
+		return batch;
+	}
+
+	public void setBatch(boolean batch) {
+		this.batch = batch;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * @return "stdin", a port number or null if the compiler doesn't run as a server
+	 */
+	public String getServer() {
+		return server;
+	}
+
+	public void setServer(String server) {
+		this.server = server;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public String getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	public void setCacheDirectory(String cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * @return maximal size of the cache directory in bytes
+	 */
+	public long getCacheSize() {
+		return cacheSize;
+	}
+
+	public void setCacheSize(long cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	public List<String> getFiles() {
+		return files;
+	}
+}
@@ -0,0 +1,120 @@
+package edu.uci.eecs.compiler.frontend;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import edu.uci.eecs.compiler.model.CompilationContext;
+import edu.uci.eecs.compiler.model.Method;
+import edu.uci.eecs.compiler.representation.SSAInstruction;
+import edu.uci.eecs.compiler.util.Interner;
+
+/**
+ * Methods of earlier compilations of the same program, so a recompilation only parses
+ * the functions that changed. The Parser looks a method up by a fingerprint of the tokens
+ * of the function and of the declarations of the globals it uses.
+ *
+ * The identifiers keep their ids for the life of the cache, all compilations use its
+ * interner. A reused method is renumbered to the block ids and instruction numbers it
+ * would get if it was parsed again, so the graph is the same as the one of a compilation
+ * without the cache. A method that was not used by a compilation is dropped by the next
+ * one. One program is compiled at a time.
+ *
+ * A method is kept as the compilation left it, after the passes, so a reused method is
+ * not optimized again.
+ *
+ */
+public class FunctionCache {
+
+	private Interner interner;
+	private HashMap<String, Entry> current;
+	private HashMap<String, Entry> previous;
+	private HashSet<Method> reused;
+	private int rebuilt;
+	//ids of the context when the method being parsed was looked up
+	private int blockId;
+	private int instructionNumber;
+
+	/**
+	 * A method and the ids it took in the compilation that built or reused it last.
+	 */
+	private static class Entry {
+		private Method method;
+		private int blockId;
+		private int blockNumber;
+		private List<SSAInstruction> instructions;
+	}
+
+	public FunctionCache() {
+		this.interner = new Interner();
+		this.current = new HashMap<String, Entry>();
+		this.previous = new HashMap<String, Entry>();
+		this.reused = new HashSet<Method>();
+	}
+
+	public Interner getInterner() {
+		return interner;
+	}
+
+	public void beginCompilation(CompilationContext context) {
+		context.keepNumbered();
+		previous = current;
+		current = new HashMap<String, Entry>();
+		reused = new HashSet<Method>();
+		rebuilt = 0;
+	}
+
+	/**
+	 * @return the method moved into the context, or null if it is not cached
+	 */
+	public Method lookup(String key, CompilationContext context) {
+		Entry entry = previous.remove(key);
+		if(entry == null || current.containsKey(key)) {
+			//a function declared twice is parsed twice, its ids are taken once per declaration
+			blockId = context.getBlockNumber();
+			instructionNumber = context.getInstructionNumber();
+			rebuilt++;
+			return null;
+		}
+
+		int blockBase = context.getBlockNumber();
+		context.takeOver(entry.method, entry.blockId, entry.blockNumber, entry.instructions);
+		entry.blockId = blockBase;
+		current.put(key, entry);
+		reused.add(entry.method);
+		return entry.method;
+	}
+
+	/**
+	 * Keep a method after it is built, it took the ids the context gave since the lookup.
+	 */
+	public void store(String key, Method method, CompilationContext context) {
+		Entry entry = new Entry();
+		entry.method = method;
+		entry.blockId = blockId;
+		entry.blockNumber = context.getBlockNumber() - blockId;
+		entry.instructions = context.getNumbered(instructionNumber, context.getInstructionNumber());
+		current.put(key, entry);
+	}
+
+	/**
+	 * @return methods taken from the cache by the last compilation
+	 */
+	public int getReused() {
+		return reused.size();
+	}
+
+	/**
+	 * @return whether the last compilation took the method from the cache
+	 */
+	public boolean isReused(Method method) {
+		return reused.contains(method);
+	}
+
+	/**
+	 * @return methods parsed by the last compilation
+	 */
+	public int getRebuilt() {
+		return rebuilt;
+	}
+}
@@ -0,0 +1,127 @@
+package edu.uci.eecs.compiler.frontend;
+
+import java.io.BufferedWriter;
+import java.io.CharArrayWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.uci.eecs.compiler.model.Method;
+import edu.uci.eecs.compiler.model.Program;
+import edu.uci.eecs.compiler.util.Constant;
+
+/**
+ * Writes the graph of a program to a file while it is generated, the whole graph is
+ * never held in memory. With more than one thread every method is rendered into its
+ * own buffer in parallel, the buffers are written in the order of the methods.
+ * The graph can also be echoed to stdout.
+ *
+ */
+public class GraphWriter {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private int threads;
+	private boolean echo;
+
+	public GraphWriter(int threads, boolean echo) {
+		this.threads = threads;
+		this.echo = echo;
+	}
+
+	public void write(Program program, String fileName) throws IOException {
+		Writer writer = open(fileName);
+		try {
+			if(threads <= 1 || program.getMethods().size() <= 1) {
+				program.toGraph(writer);
+			} else {
+				writeParallel(program, writer);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * @return buffered writer of the graph file, it echoes to stdout if asked to
+	 */
+	public Writer open(String fileName) throws IOException {
+		Writer writer = new BufferedWriter(new FileWriter(fileName), BUFFER_SIZE);
+		if(echo) {
+			writer = new EchoWriter(writer, new OutputStreamWriter(System.out));
+		}
+		return writer;
+	}
+
+	private void writeParallel(Program program, Writer writer) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<CharArrayWriter>> graphs = new ArrayList<Future<CharArrayWriter>>();
+			for(final Method method : program.getMethods()) {
+				graphs.add(executor.submit(new Callable<CharArrayWriter>() {
+					public CharArrayWriter call() throws IOException {
+						CharArrayWriter graph = new CharArrayWriter();
+						method.toGraph(graph);
+						return graph;
+					}
+				}));
+			}
+
+			for(Future<CharArrayWriter> graph : graphs) {
+				graph.get().writeTo(writer);
+				writer.write(Constant.LINE_SEPARATER);
+			}
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while writing the graph", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to write the graph", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Writes to the file and to stdout, stdout is flushed but never closed.
+	 */
+	private static class EchoWriter extends Writer {
+		private Writer writer;
+		private Writer echo;
+
+		public EchoWriter(Writer writer, Writer echo) {
+			this.writer = writer;
+			this.echo = echo;
+		}
+
+		@Override
+		public void write(char[] buffer, int offset, int length) throws IOException {
+			writer.write(buffer, offset, length);
+			echo.write(buffer, offset, length);
+		}
+
+		@Override
+		public void write(String content) throws IOException {
+			writer.write(content);
+			echo.write(content);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			writer.flush();
+			echo.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			writer.close();
+			echo.flush();
+		}
+	}
+}
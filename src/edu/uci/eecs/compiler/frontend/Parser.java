@@ -1,23 +1,43 @@
 package edu.uci.eecs.compiler.frontend;
 
+import edu.uci.eecs.compiler.model.CompilationContext;
+import edu.uci.eecs.compiler.model.CompileStatistics;
 import edu.uci.eecs.compiler.model.Program;
+import edu.uci.eecs.compiler.frontend.CompilerOptions.SSAMode;
 import edu.uci.eecs.compiler.representation.Block;
 import edu.uci.eecs.compiler.representation.SSAInstruction;
+import edu.uci.eecs.compiler.representation.SymbolTable.TableRecord;
 import edu.uci.eecs.compiler.representation.SSAInstruction.*;
 import edu.uci.eecs.compiler.representation.Block.EntryBlock;
 import edu.uci.eecs.compiler.representation.Block.JoinBlock;
 import edu.uci.eecs.compiler.representation.Block.ExitBlock;
+import edu.uci.eecs.compiler.util.CompilerEvents;
+import edu.uci.eecs.compiler.util.CompilerEvents.ParseEvent;
+import edu.uci.eecs.compiler.util.CompilerEvents.SSAEvent;
 import edu.uci.eecs.compiler.util.ComparsionOperatorType;
 import edu.uci.eecs.compiler.util.ComputationOperatorType;
+import edu.uci.eecs.compiler.util.Interner;
+import edu.uci.eecs.compiler.util.SymbolType;
 import edu.uci.eecs.compiler.util.Token;
 import edu.uci.eecs.compiler.model.Method;
 import edu.uci.eecs.compiler.model.State;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  *  One round parse top to down to construct SSAInstruction and Control Flow Graph.
+ *  
+ *  In CLASSIC mode the values of local variables are tracked by State and phis are
+ *  created at every join. In the other modes local variables are loaded and stored
+ *  like globals, and SSAConstructor turns them into SSA at the end of each method.
  * @author Peter
  *
  */
@@ -28,10 +48,143 @@ public class Parser {
 	private Block currentBlock;
 	private Method currentMethod;
 	private State currentState;
+	private Interner interner;
+	private SSAMode ssaMode;
+	private CompilationContext context;
+	private FunctionCache functionCache;
+	private int parseThreads;
+	private MethodListener methodListener;
+	
+	//local value numbering, see compute
+	private Block valueBlock;
+	private HashMap<Integer, ConstantSSAInstruction> constants;
+	private HashMap<ComputationKey, SSAInstruction> computations;
+	
+	/**
+	 * Receives every method as soon as its body is closed and its SSA is built.
+	 */
+	public interface MethodListener {
+		void methodBuilt(Method method);
+	}
+	
+	/**
+	 * Value of a factor, term or expression. A constant gets an instruction only when
+	 * it is used, so constant operands are folded without placing them.
+	 */
+	private static class Value {
+		private SSAInstruction instruction;
+		private int constant;
+		
+		private Value(SSAInstruction instruction) {
+			this.instruction = instruction;
+		}
+		
+		private Value(int constant) {
+			this.constant = constant;
+		}
+		
+		private SSAInstruction getInstruction() {
+			return instruction;
+		}
+		
+		/**
+		 * The initial value of a variable that is never assigned is a constant outside the
+		 * blocks, it is not folded so reading an uninitialized variable stays visible.
+		 */
+		private boolean isConstant() {
+			return instruction == null
+					|| (instruction instanceof ConstantSSAInstruction && instruction.getBlock() != null);
+		}
+		
+		private int getConstant() {
+			return instruction == null ? constant : ((ConstantSSAInstruction)instruction).getValue();
+		}
+	}
+	
+	private static class ComputationKey {
+		private ComputationOperatorType type;
+		private SSAInstruction left;
+		private SSAInstruction right;
+		
+		private ComputationKey(ComputationOperatorType type, SSAInstruction left, SSAInstruction right) {
+			this.type = type;
+			this.left = left;
+			this.right = right;
+		}
+		
+		@Override
+		public boolean equals(Object object) {
+			if(!(object instanceof ComputationKey)) {
+				return false;
+			}
+			ComputationKey key = (ComputationKey)object;
+			return type == key.type && left == key.left && right == key.right;
+		}
+		
+		@Override
+		public int hashCode() {
+			return (type.ordinal() * 31 + System.identityHashCode(left)) * 31 + System.identityHashCode(right);
+		}
+	}
 	
 	public Parser(Scanner scanner, Program program) {
+		this(scanner, program, SSAMode.CLASSIC);
+	}
+	
+	public Parser(Scanner scanner, Program program, SSAMode ssaMode) {
 		this.scanner = scanner;
 		this.currentProgram = program;
+		this.interner = program.getInterner();
+		this.ssaMode = ssaMode;
+		this.context = program.getContext();
+		this.parseThreads = 1;
+		scanner.setContext(context);
+		this.constants = new HashMap<Integer, ConstantSSAInstruction>();
+		this.computations = new HashMap<ComputationKey, SSAInstruction>();
+	}
+	
+	/**
+	 * Parser of one function of a parallel parse, the ids come from its own context.
+	 */
+	private Parser(Parser parent, Scanner scanner) {
+		this.scanner = scanner;
+		this.currentProgram = parent.currentProgram;
+		this.interner = parent.interner;
+		this.ssaMode = parent.ssaMode;
+		this.context = parent.context.createFunctionContext();
+		scanner.setContext(context);
+		this.constants = new HashMap<Integer, ConstantSSAInstruction>();
+		this.computations = new HashMap<ComputationKey, SSAInstruction>();
+	}
+	
+	/**
+	 * Take unchanged functions from the cache instead of parsing them again, it needs
+	 * a BufferScanner to look ahead over the function.
+	 */
+	public void setFunctionCache(FunctionCache functionCache) {
+		this.functionCache = functionCache;
+	}
+	
+	/**
+	 * Parse the function declarations on that many threads, it needs a BufferScanner to
+	 * find the functions. It is not used together with the function cache.
+	 */
+	public void setParseThreads(int parseThreads) {
+		this.parseThreads = parseThreads;
+	}
+
+	/**
+	 * Hand every method to the listener instead of adding it to the program. The parser
+	 * keeps no reference to a method after it is handed over, only the globals stay in
+	 * the program.
+	 */
+	public void setMethodListener(MethodListener methodListener) {
+		this.methodListener = methodListener;
+	}
+	
+	//local variables are kept in memory until SSAConstructor renames them
+	private boolean isMemoryForm() {
+		return ssaMode != SSAMode.CLASSIC;
 	}
 	
 	private boolean expect(Token token) {
@@ -42,7 +195,7 @@ public class Parser {
 	private void consume(Token token) {
 		
 		if(!expect(token)) {
-			System.out.println("Can't consume the token:" + token.name() + " " + scanner.getLineNumber());
+			context.report("Can't consume the token:" + token.name() + " " + scanner.getLineNumber());
 			return;
 		}
 		scanner.nextToken();
@@ -51,25 +204,28 @@ public class Parser {
 	/*
 	 * Add fields into symbol tables, global and local
 	 */
-	private void addVariableIntoTable(boolean isGlobal, String name, int lineNumber, ArrayList<Integer> dimentions){
+	private void addVariableIntoTable(boolean isGlobal, int id, int lineNumber, ArrayList<Integer> dimentions){
+		String name = interner.getName(id);
 		
 		if(isGlobal) { //It is variable for whole program
 			
 			if(dimentions == null ) {
 				//add initilaize value the store the value into global memory for static global variables
-				new StoreVariableSSAInstruction(currentBlock, name, SSAInstruction.createInitialValue());
+				new StoreVariableSSAInstruction(currentBlock, id, name, SSAInstruction.createInitialValue(context));
 			} else {
 				new DeclareArraySSAInstruction(currentBlock, name, dimentions);
 			}
-			currentProgram.addSymbol(name, lineNumber, dimentions);
+			currentProgram.addSymbol(id, lineNumber, dimentions);
 			
 		} else { //It is variable for current method
-			if(dimentions == null) {
-				currentState.setVariable(name, SSAInstruction.createInitialValue());
+			if(dimentions == null && isMemoryForm()) {
+				new StoreVariableSSAInstruction(currentBlock, id, name, SSAInstruction.createInitialValue(context));
+			} else if(dimentions == null) {
+				currentState.setVariable(id, SSAInstruction.createInitialValue(context));
 			} else {
 				new DeclareArraySSAInstruction(currentBlock, name, dimentions);
 			}
-			currentMethod.addSymbol(name, lineNumber, dimentions);
+			currentMethod.addSymbol(id, lineNumber, dimentions);
 		}
 		
 	}
@@ -87,23 +243,24 @@ public class Parser {
 	private SSAInstruction parseDesignator(boolean isAssignment) {
 		SSAInstruction instruction = null;
 		if (expect(Token.IDENTIFIER)) {
-			String name = scanner.getCurrentContent();
+			int id = scanner.getCurrentId();
 			consume(Token.IDENTIFIER);
 			
 			if(!expect(Token.OPENBRACKET)) {
 				if(!isAssignment) {
-					instruction = getVariable(name);
+					instruction = getVariable(id);
 				}
 			} else {
-				int currentDimensionIndex = 1;
-				instruction = new LoadArraySSAInstruction(currentBlock, name);
+				int[] strides = resolveArray(id);
+				int dimension = 0;
+				instruction = new LoadArraySSAInstruction(currentBlock, interner.getName(id));
 				while(expect(Token.OPENBRACKET)){
 					consume(Token.OPENBRACKET);
 					SSAInstruction expression = parseExpression();
-					int base = calculateIndexBase(name, currentDimensionIndex);
+					int base = dimension < strides.length ? strides[dimension] : 1;
 					instruction =  new IndexSSAInstruction(currentBlock, instruction, expression, base);
 					consume(Token.CLOSEBRACKET);
-					currentDimensionIndex ++;
+					dimension ++;
 				}
 				
 				if(!isAssignment) {
@@ -114,29 +271,29 @@ public class Parser {
 		return instruction;
 	}
 	
-	private int calculateIndexBase(String name, int index) {
-		List<Integer> dimentions;
-		if(currentProgram.hasVariable(name)) {
-			dimentions = currentProgram.getDimention(name);
-		} else {
-			dimentions =currentMethod.getDimension(name);
+	/**
+	 * Locals hide the globals of the same name.
+	 * @return the strides of the array, computed when it is declared
+	 */
+	private int[] resolveArray(int id) {
+		TableRecord symbol = currentMethod.getSymbol(id);
+		if(symbol == null) {
+			symbol = currentProgram.getSymbol(id);
 		}
-		
-		int base = 1;
-		for (int i = index; i < dimentions.size(); i++) {
-			base *= dimentions.get(i);
+		if(symbol == null || symbol.strides == null) {
+			context.report("Undeclared array:" + interner.getName(id) + " " + scanner.getLineNumber());
+			return new int[0];
 		}
-		
-		return base;
+		return symbol.strides;
 	}
 	
-	private SSAInstruction getVariable(String name) {
+	private SSAInstruction getVariable(int id) {
 		SSAInstruction instruction = null;
-		if(currentProgram.hasVariable(name)) {
+		if(currentProgram.hasVariable(id) || isMemoryForm()) {
 			//load global variable;
-			instruction = new LoadVariableSSAInstruction(currentBlock, name);
+			instruction = new LoadVariableSSAInstruction(currentBlock, id, interner.getName(id));
 		} else {
-			instruction = currentState.getVariable(name);
+			instruction = currentState.getVariable(id);
 		}
 		
 		return instruction;
@@ -144,50 +301,42 @@ public class Parser {
 	
 	
 	// designator | number | (expression) | functionCall
-	private SSAInstruction parseFactor() {
+	private Value parseFactor() {
 		SSAInstruction instruction = parseDesignator(false);
 		if(instruction == null) {
 			if(expect(Token.NUMBER)) {
-				instruction = new ConstantSSAInstruction(currentBlock, scanner.getCurrentNumber());
+				Value value = new Value(scanner.getCurrentNumber());
 				consume(Token.NUMBER);
-				return instruction;
+				return value;
 			} else if(expect(Token.OPENPARENTHESES)) {
 				consume(Token.OPENPARENTHESES);
-				instruction = parseExpression();
+				Value value = parseExpressionValue();
 				consume(Token.CLOSEPARENTHESES);
-				return instruction;
+				return value;
 			} else if(expect(Token.CALL)) {
 				instruction = parseFunctionCall();
-				return instruction;
 			}
-			
-		} else {
-			return instruction;
 		}
 		
-		return instruction;
+		return instruction != null ? new Value(instruction) : null;
 	}
 	
 	/**
 	 *  factor {( * | /) factor}
 	 */
-	private SSAInstruction parseTerm() {
-		SSAInstruction instruction = parseFactor();
+	private Value parseTerm() {
+		Value value = parseFactor();
 		while(expect(Token.TIMES) || expect(Token.DIVIDE)) {
 			if(expect(Token.TIMES)) {
 				consume(Token.TIMES);
-				SSAInstruction right = parseFactor();
-				instruction = new ComputationSSAInstruction(currentBlock,
-						ComputationOperatorType.TIMES, instruction, right);
+				value = compute(ComputationOperatorType.TIMES, value, parseFactor());
 			} else {
 				consume(Token.DIVIDE);
-				SSAInstruction right = parseFactor();
-				instruction = new ComputationSSAInstruction(currentBlock,
-						ComputationOperatorType.DIVIDE, instruction, right);
+				value = compute(ComputationOperatorType.DIVIDE, value, parseFactor());
 			}
 		}
 		
-		return instruction;
+		return value;
 	}
 	
 	/**
@@ -196,21 +345,89 @@ public class Parser {
 	 * @return
 	 */
 	private SSAInstruction parseExpression() {
-		SSAInstruction instruction = parseTerm();
+		return materialize(parseExpressionValue());
+	}
+	
+	private Value parseExpressionValue() {
+		Value value = parseTerm();
 		while(expect(Token.PLUS) || expect(Token.MINUS)) {
 			if(expect(Token.PLUS)) {
 				consume(Token.PLUS);
-				SSAInstruction right = parseTerm();
-				instruction = new ComputationSSAInstruction(currentBlock,
-						ComputationOperatorType.ADD, instruction, right);
+				value = compute(ComputationOperatorType.ADD, value, parseTerm());
 			} else {
 				consume(Token.MINUS);
-				SSAInstruction right = parseTerm();
-				instruction = new ComputationSSAInstruction(currentBlock,
-						ComputationOperatorType.MINUS, instruction, right);
+				value = compute(ComputationOperatorType.MINUS, value, parseTerm());
 			}
 		}
-		return instruction;
+		return value;
+	}
+	
+	/**
+	 * Fold constant operands, and take the computation with the same operator and
+	 * operands from the current block if there is one.
+	 */
+	private Value compute(ComputationOperatorType type, Value left, Value right) {
+		if(left.isConstant() && right.isConstant()
+				&& !(type == ComputationOperatorType.DIVIDE && right.getConstant() == 0)) {
+			return new Value(fold(type, left.getConstant(), right.getConstant()));
+		}
+		
+		SSAInstruction leftOperand = materialize(left);
+		SSAInstruction rightOperand = materialize(right);
+		
+		enterValueBlock();
+		ComputationKey key = new ComputationKey(type, leftOperand, rightOperand);
+		SSAInstruction instruction = computations.get(key);
+		if(instruction == null && (type == ComputationOperatorType.ADD || type == ComputationOperatorType.TIMES)) {
+			//b+a is the same value as a+b, the operands keep the order of the source
+			instruction = computations.get(new ComputationKey(type, rightOperand, leftOperand));
+		}
+		if(instruction == null) {
+			instruction = new ComputationSSAInstruction(currentBlock, type, leftOperand, rightOperand);
+			computations.put(key, instruction);
+		}
+		return new Value(instruction);
+	}
+	
+	private static int fold(ComputationOperatorType type, int left, int right) {
+		switch(type) {
+			case ADD:
+				return left + right;
+			case MINUS:
+				return left - right;
+			case TIMES:
+				return left * right;
+			default:
+				return left / right;
+		}
+	}
+	
+	/**
+	 * @return the instruction of the value, a constant is placed once per block
+	 */
+	private SSAInstruction materialize(Value value) {
+		if(value == null) {
+			return null;
+		} else if(value.getInstruction() != null) {
+			return value.getInstruction();
+		}
+		
+		enterValueBlock();
+		ConstantSSAInstruction constant = constants.get(value.getConstant());
+		if(constant == null) {
+			constant = new ConstantSSAInstruction(currentBlock, value.getConstant());
+			constants.put(value.getConstant(), constant);
+		}
+		return constant;
+	}
+	
+	//the tables of constants and computations only hold instructions of the current block
+	private void enterValueBlock() {
+		if(valueBlock != currentBlock) {
+			valueBlock = currentBlock;
+			constants.clear();
+			computations.clear();
+		}
 	}
 	 
 	/**
@@ -252,12 +469,12 @@ public class Parser {
 	// let designator < - expression
 	private void parseAssignment() {
 		consume(Token.LET);
-		String name = scanner.getCurrentContent();
+		int id = scanner.getCurrentId();
 		SSAInstruction dest = parseDesignator(true);
 		consume(Token.ASSIGNMENT);
 		SSAInstruction value = parseExpression();
 		if(dest == null) { // it is a simple variable assignment
-			storeSymbolValue(name, value);
+			storeSymbolValue(id, value);
 		} else { //it is a array assignment
 			SSAInstruction store = new StoreSSAInstruction(currentBlock, dest, value);
 			//the instruction is added into current block
@@ -265,12 +482,12 @@ public class Parser {
 	}
 	
 	//rewrite the value for variable in current state
-	private void storeSymbolValue(String name, SSAInstruction instruction) {
+	private void storeSymbolValue(int id, SSAInstruction instruction) {
 		
-		if(currentProgram.hasVariable(name)) {
-			new StoreVariableSSAInstruction(currentBlock, name, instruction);
+		if(currentProgram.hasVariable(id) || isMemoryForm()) {
+			new StoreVariableSSAInstruction(currentBlock, id, interner.getName(id), instruction);
 		} else {
-			currentState.setVariable(name, instruction);
+			currentState.setVariable(id, instruction);
 		}
 	}
 	
@@ -329,7 +546,7 @@ public class Parser {
 			//Process condition
 			ConditionSSAInstruction relation = parseRelation();
 			endCurrentBlockWithCondition(relation, thenBlock, elseBlock);
-			State state = currentState.deepCopy();
+			State state = currentState.snapshot();
 			
 			//Process the then scope
 			consume(Token.THEN);
@@ -350,32 +567,16 @@ public class Parser {
 			}
 			consume(Token.FI);
 			enterJoinBlock(joinBlock);
-			setConditionalDominator(relationBlock, thenBlock, elseBlock, joinBlock);
 		}
 		
 	}
 	
 	private void enterJoinBlock(JoinBlock block) {
 		currentBlock = block;
-		insertPhiInstruction(block);
-		currentBlock.setBeginState(currentState.deepCopy());
-	}
-	
-	/**
-	 * Set the dominator for if else blocks
-	 * @param conditionBlock
-	 * @param thenBlock
-	 * @param elseBlock
-	 * @param joinBlock
-	 */
-	private void setConditionalDominator(Block conditionBlock, Block thenBlock, Block elseBlock, JoinBlock joinBlock) {
-		thenBlock.setDominator(conditionBlock);
-		elseBlock.setDominator(conditionBlock);
-		if(joinBlock.getPrecdentBlockNumber() == 1) {
-			joinBlock.setDominator(thenBlock);
-		} else {
-			joinBlock.setDominator(conditionBlock);
+		if(!isMemoryForm()) {
+			insertPhiInstruction(block);
 		}
+		currentBlock.setBeginState(currentState.snapshot());
 	}
 	
 	/**
@@ -388,30 +589,30 @@ public class Parser {
 	private void insertPhiInstruction(JoinBlock block) {
 		int blockNumber = block.getPrecdentBlockNumber();
 		if(blockNumber == 1) { // simple exit block with one return
-			currentState = block.getPrecedentBlock(0).getEndState().deepCopy();
+			currentState = block.getPrecedentBlock(0).getEndState().snapshot();
 		} else if (blockNumber == 2) { //if and loop
 			currentState = new State();
 			Block thenBlock = block.getPrecedentBlock(0);
 			Block elseBlock = block.getPrecedentBlock(1);
 			
 			//it is for local variables
-			for(String symbol:currentMethod.getSymbols()) {
+			for(int symbol : currentMethod.getSymbolIds()) {
 				addPhilForSymbol(symbol, block, thenBlock, elseBlock);
 			}
 			
 		} else if (blockNumber > 3) { // the exit block with return values
 			currentState = new State();
-			PhiSSAInstruction phiForReturn= new PhiSSAInstruction(block, "return");
+			PhiSSAInstruction phiForReturn= new PhiSSAInstruction(block, Interner.RETURN_ID, "return");
 			block.addPhiInstruction(phiForReturn);
-			currentState.setVariable("return", phiForReturn);
+			currentState.setVariable(Interner.RETURN_ID, phiForReturn);
 		}
 	}
 	
-	private void addPhilForSymbol(String symbol, JoinBlock block, Block thenBlock, Block elseBlock) {
+	private void addPhilForSymbol(int symbol, JoinBlock block, Block thenBlock, Block elseBlock) {
 		SSAInstruction valueFromThen = thenBlock.getEndState().getVariable(symbol);
 		SSAInstruction valueFromElse = elseBlock.getEndState().getVariable(symbol);
 		if(!valueFromThen.equals(valueFromElse)) {
-			PhiSSAInstruction phi = new PhiSSAInstruction(block, symbol);
+			PhiSSAInstruction phi = new PhiSSAInstruction(block, symbol, interner.getName(symbol));
 			phi.addOperand(thenBlock, valueFromThen);
 			phi.addOperand(elseBlock, valueFromElse);
 			block.addPhiInstruction(phi);
@@ -423,7 +624,7 @@ public class Parser {
 	
 	private void endCurrentBlockWithCondition(ConditionSSAInstruction relation, Block thenBlock, Block elseBlock) {
 		ConditionalBranchSSAInstruction instruction = new ConditionalBranchSSAInstruction(currentBlock, relation, thenBlock, elseBlock);
-		currentBlock.setEndState(currentState.deepCopy());
+		currentBlock.setEndState(currentState.snapshot());
 		currentBlock.addSubsequentBlock(thenBlock);
 		currentBlock.addSubsequentBlock(elseBlock);
 	}
@@ -444,7 +645,7 @@ public class Parser {
 			enterLoopJoinBlock(join);
 			ConditionSSAInstruction condition = parseRelation();
 			endCurrentBlockWithCondition(condition, bodyBlock, exitBlock);
-			State beforeBody = currentState.deepCopy();
+			State beforeBody = currentState.snapshot();
 			
 			consume(Token.DO);
 			beginBlock(bodyBlock);
@@ -454,15 +655,13 @@ public class Parser {
 			consume(Token.OD);
 			
 			beginBranchBlock(exitBlock, beforeBody);
-			bodyBlock.setDominator(join);
-			exitBlock.setDominator(join);
 		}
 	}
 	
 	private void beginBranchBlock(Block block, State state) {
 		currentBlock = block;
 		currentState = state;
-		block.setBeginState(currentState.deepCopy());
+		block.setBeginState(currentState.snapshot());
 	}
 	
 	/**
@@ -470,17 +669,18 @@ public class Parser {
 	 * @param join
 	 */
 	private void enterLoopJoinBlock(JoinBlock join) {
-		join.setDominator(currentBlock);
 		currentBlock = join;
 		State joinState = new State();
 		
 		//create phi for all the symbols in current state
-		for(String symbol: currentMethod.getSymbols()) {
-			PhiSSAInstruction phi = new PhiSSAInstruction(currentBlock, symbol);
-			joinState.addVariable(symbol, phi);
+		if(!isMemoryForm()) {
+			for(int symbol : currentMethod.getSymbolIds()) {
+				PhiSSAInstruction phi = new PhiSSAInstruction(currentBlock, symbol, interner.getName(symbol));
+				joinState.addVariable(symbol, phi);
+			}
 		}
 		currentState = joinState;
-		currentBlock.setBeginState(currentState.deepCopy());
+		currentBlock.setBeginState(currentState.snapshot());
 	}
 	
 	/**
@@ -490,10 +690,14 @@ public class Parser {
 		if(expect(Token.RETURN)) {
 			consume(Token.RETURN);
 			SSAInstruction value = parseExpression();
-			currentState.addVariable("return", value);
+			if(!isMemoryForm()) {
+				currentState.addVariable(Interner.RETURN_ID, value);
+			} else if(value != null && currentMethod.isFunction()) {
+				new StoreVariableSSAInstruction(currentBlock, Interner.RETURN_ID, "return", value);
+			}
 			SSAInstruction branch = new UnconditionalBranchSSAInstruction(currentBlock, currentMethod.getExitBlock());
 			currentBlock.addSubsequentBlock(currentMethod.getExitBlock());
-			currentBlock.setEndState(currentState.deepCopy());
+			currentBlock.setEndState(currentState.snapshot());
 		}
 	}
 	
@@ -542,7 +746,6 @@ public class Parser {
 			
 			//multiple dimentions
 			while(expect(Token.OPENBRACKET)) {
-				consume(Token.ARRAY);
 				consume(Token.OPENBRACKET);
 				consume(Token.NUMBER);
 				arrayDimentions.add(scanner.getCurrentNumber());
@@ -561,13 +764,13 @@ public class Parser {
 		
 		while(expect(Token.VAR) || expect(Token.ARRAY)){
 			ArrayList<Integer> dimentions = parseTypeDeclaration();
-			String name = scanner.getCurrentContent();
+			int id = scanner.getCurrentId();
 			consume(Token.IDENTIFIER);
-			addVariableIntoTable(isGlobal, name, scanner.getLineNumber(), dimentions);
+			addVariableIntoTable(isGlobal, id, scanner.getLineNumber(), dimentions);
 			while(expect(Token.COMMA)) {
 				consume(Token.COMMA);
-				name = scanner.getCurrentContent();
-				addVariableIntoTable(isGlobal, name, scanner.getLineNumber(), dimentions);
+				id = scanner.getCurrentId();
+				addVariableIntoTable(isGlobal, id, scanner.getLineNumber(), dimentions);
 				consume(Token.IDENTIFIER);
 			}
 			consume(Token.SEMICOLON);
@@ -579,25 +782,166 @@ public class Parser {
 	 */
 	private void parseFunctionDeclaration() {
 		if(expect(Token.PROCEDURE) || expect(Token.FUNCTION)) {
-			if(expect(Token.PROCEDURE)) {
-				consume(Token.PROCEDURE);
-				currentMethod = new Method(scanner.getCurrentContent(), false);
-				consume(Token.IDENTIFIER);
-			} else {
-				consume(Token.FUNCTION);
-				currentMethod = new Method(scanner.getCurrentContent(), true);
-				consume(Token.IDENTIFIER);
+			if(parseThreads > 1 && functionCache == null && scanner instanceof BufferScanner
+					&& parseFunctionsInParallel()) {
+				return;
+			}
+			
+			String key = null;
+			if(functionCache != null) {
+				key = fingerprintFunction();
+				Method method = key != null ? functionCache.lookup(key, context) : null;
+				if(method != null) {
+					//the tokens of the body are in the lookahead of the scanner already
+					while(!expect(Token.END)) {
+						scanner.nextToken();
+					}
+					addMethod(method);
+					consume(Token.END);
+					consume(Token.SEMICOLON);
+					parseFunctionDeclaration();
+					return;
+				}
+			}
+			
+			parseFunction();
+			addMethod(currentMethod);
+			if(key != null) {
+				functionCache.store(key, currentMethod, context);
 			}
-			currentProgram.addMethod(currentMethod);
-			EntryBlock block = createEntryBlockForCurrentMethod();
-			parseFormalParam(block);
-			consume(Token.SEMICOLON);
-			parseFunctionBody();
 			consume(Token.SEMICOLON);
 			parseFunctionDeclaration();
 		}
 	}
 	
+	/**
+	 * One function declaration without the closing semicolon.
+	 */
+	private void parseFunction() {
+		CompileStatistics.Measurement parse = beginPhase("parse", null);
+		ParseEvent event = new ParseEvent();
+		event.begin();
+		if(expect(Token.PROCEDURE)) {
+			consume(Token.PROCEDURE);
+			currentMethod = new Method(scanner.getCurrentContent(), false, context);
+			consume(Token.IDENTIFIER);
+		} else {
+			consume(Token.FUNCTION);
+			currentMethod = new Method(scanner.getCurrentContent(), true, context);
+			consume(Token.IDENTIFIER);
+		}
+		EntryBlock block = createEntryBlockForCurrentMethod();
+		parseFormalParam(block);
+		consume(Token.SEMICOLON);
+		parseFunctionBody();
+		endParse(parse, event);
+		constructSSA();
+	}
+	
+	/**
+	 * Find the remaining function declarations with a pass over the tokens, then parse
+	 * and build every function with its own Parser and context on a fork join pool.
+	 * The methods are merged in source order, so they get the same ids as in a
+	 * sequential parse.
+	 * @return false if a declaration doesn't end, the sequential parse reports it
+	 */
+	private boolean parseFunctionsInParallel() {
+		final BufferScanner bufferScanner = (BufferScanner)scanner;
+		BufferScanner.Mark begin = bufferScanner.mark();
+		List<BufferScanner.Mark> functions = new ArrayList<BufferScanner.Mark>();
+		while(expect(Token.PROCEDURE) || expect(Token.FUNCTION)) {
+			functions.add(bufferScanner.mark());
+			while(!expect(Token.END)) {
+				if(expect(Token.EOF)) {
+					bufferScanner.reset(begin);
+					return false;
+				}
+				scanner.nextToken();
+			}
+			scanner.nextToken();
+			if(!expect(Token.SEMICOLON)) {
+				bufferScanner.reset(begin);
+				return false;
+			}
+			scanner.nextToken();
+		}
+		
+		//all identifiers are interned now, the function parsers only read the interner
+		ForkJoinPool pool = new ForkJoinPool(parseThreads);
+		try {
+			List<ForkJoinTask<Parser>> tasks = new ArrayList<ForkJoinTask<Parser>>();
+			for(final BufferScanner.Mark function : functions) {
+				tasks.add(pool.submit(new Callable<Parser>() {
+					public Parser call() {
+						Parser parser = new Parser(Parser.this, bufferScanner.scannerAt(function));
+						try {
+							parser.parseFunction();
+						} finally {
+							parser.scanner.close();
+						}
+						return parser;
+					}
+				}));
+			}
+			for(ForkJoinTask<Parser> task : tasks) {
+				Parser parser = task.join();
+				context.merge(parser.context, parser.currentMethod);
+				addMethod(parser.currentMethod);
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * Hash the tokens from the function keyword to the end of the body, and the
+	 * declarations of the globals used by them. The tokens are peeked, the scanner
+	 * stays at the function keyword and the parse of a changed function doesn't scan
+	 * them again.
+	 * @return the fingerprint or null if the body doesn't end
+	 */
+	private String fingerprintFunction() {
+		StringBuilder content = new StringBuilder();
+		StringBuilder globals = new StringBuilder();
+		HashSet<Integer> identifiers = new HashSet<Integer>();
+		content.append(ssaMode).append(';');
+		for(int k = 0; scanner.peek(k) != Token.END; k++) {
+			Token token = scanner.peek(k);
+			if(token == Token.EOF) {
+				return null;
+			}
+			if(token == Token.IDENTIFIER) {
+				int id = scanner.peekId(k);
+				content.append(interner.getName(id)).append(' ');
+				if(identifiers.add(id) && currentProgram.hasVariable(id)) {
+					globals.append(interner.getName(id)).append(':').append(currentProgram.getType(id));
+					if(currentProgram.getType(id) == SymbolType.ARRAY) {
+						globals.append(currentProgram.getDimention(id));
+					}
+					globals.append(';');
+				}
+			} else if(token == Token.NUMBER) {
+				content.append(scanner.peekNumber(k)).append(' ');
+			} else {
+				content.append(token.ordinal()).append(' ');
+			}
+		}
+		content.append('|').append(globals);
+		
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		StringBuilder key = new StringBuilder();
+		for(byte b : digest.digest(content.toString().getBytes())) {
+			key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return key.toString();
+	}
 	
 	/**
 	 * When begin with a new function, create a new state for it.
@@ -618,12 +962,12 @@ public class Parser {
 		if(expect(Token.OPENPARENTHESES)) {
 			consume(Token.OPENPARENTHESES);
 			if(expect(Token.IDENTIFIER)) {
-				addParameter(block, scanner.getCurrentContent(), scanner.getLineNumber());
+				addParameter(block, scanner.getCurrentId(), scanner.getLineNumber());
 				consume(Token.IDENTIFIER);
 				while(expect(Token.COMMA)) {
 					consume(Token.COMMA);
 					if(expect(Token.IDENTIFIER)) {
-						addParameter(block, scanner.getCurrentContent(), scanner.getLineNumber());
+						addParameter(block, scanner.getCurrentId(), scanner.getLineNumber());
 						consume(Token.IDENTIFIER);
 					} else {
 						//TODO
@@ -635,11 +979,15 @@ public class Parser {
 		}
 	}
 	
-	private void addParameter(EntryBlock block, String name, int lino) {
-		currentMethod.addSymbol(name, lino, null); //
-		ParameterSSAInstruction parameter = new ParameterSSAInstruction(currentBlock, name);
+	private void addParameter(EntryBlock block, int id, int lino) {
+		currentMethod.addSymbol(id, lino, null); //
+		ParameterSSAInstruction parameter = new ParameterSSAInstruction(currentBlock, interner.getName(id));
 		block.addParameter(parameter);
-		currentState.addVariable(name, parameter);
+		if(isMemoryForm()) {
+			new StoreVariableSSAInstruction(currentBlock, id, interner.getName(id), parameter);
+		} else {
+			currentState.addVariable(id, parameter);
+		}
 	}
 	
 	/**
@@ -650,13 +998,12 @@ public class Parser {
 		
 		//TODO remove it if it is possible
 		if(currentMethod.isFunction()) {
-			this.addVariableIntoTable(false, "return", 0, null);
+			this.addVariableIntoTable(false, Interner.RETURN_ID, 0, null);
 		}
 		
 		consume(Token.BEGIN);
 		Block firstBlock = new Block(currentMethod);
 		endBlockWithJump(firstBlock);
-		firstBlock.setDominator(currentBlock);
 		
 		ExitBlock exitBlock = new ExitBlock(currentMethod);
 		beginBlock(firstBlock);
@@ -672,13 +1019,18 @@ public class Parser {
 	
 	/**
 	 * 1) Add return instruction
-	 * 2) Set dominator of the exit block
+	 * 2) Compute the dominators of the method
 	 * @param exitBlock
 	 */
 	private void endExitBlock(ExitBlock exitBlock) {
 		
 		if(currentMethod.isFunction()) {
-			SSAInstruction returnValue = currentState.getVariable("return");
+			SSAInstruction returnValue;
+			if(isMemoryForm()) {
+				returnValue = new LoadVariableSSAInstruction(exitBlock, Interner.RETURN_ID, "return");
+			} else {
+				returnValue = currentState.getVariable(Interner.RETURN_ID);
+			}
 			//TODO check whether the return value is valid
 			if(returnValue != null) {
 				new ReturnValueSSAInstruction(exitBlock, returnValue);
@@ -689,50 +1041,14 @@ public class Parser {
 			new ReturnSSAInstruction(exitBlock);
 		}
 		
-		exitBlock.setEndState(currentState.deepCopy());
-		
-		if(exitBlock.getPrecdentBlockNumber() == 1) {
-			exitBlock.setDominator(exitBlock.getPrecedentBlock(0));
-		} else {
-			exitBlock.setDominator(findCommonDominator(exitBlock.getPrecedentBlocks()));
-		}
-	}
-	
-	private Block findCommonDominator(List<Block> blocks){
-		if(blocks == null || blocks.size() == 0) {
-			return null;
-			//throw new RuntimeException("No common dominotor for an empty block list");
-		}
-		
-		Block dominator = blocks.get(0).getDominator();
-		if(blocks.size() == 1) {
-			return dominator;
-		} else {
-			while(dominator !=null) {
-				if(dominateAll(dominator, blocks)){
-					return dominator;
-				}
-				dominator = dominator.getDominator();
-			}
-		}
+		exitBlock.setEndState(currentState.snapshot());
 		
-		throw new RuntimeException("No common dominotor!!!");
-	}
-	
-	private boolean dominateAll(Block dominator, List<Block> blocks) {
-		
-		for(Block block : blocks) {
-			if(!block.isDominater(dominator)){
-				return false;
-			}
-		}
-		
-		return true;
+		currentMethod.getDominatorTree();
 	}
 	
 	private void beginBlock(Block block) {
 		currentBlock = block;
-		currentBlock.setBeginState(currentState.deepCopy());
+		currentBlock.setBeginState(currentState.snapshot());
 	}
 	
 	private void endBlockWithJump(Block block) {
@@ -741,7 +1057,7 @@ public class Parser {
 			new UnconditionalBranchSSAInstruction(currentBlock, block);
 			currentBlock.addSubsequentBlock(block);
 		}
-		currentBlock.setEndState(currentState.deepCopy());
+		currentBlock.setEndState(currentState.snapshot());
 	}
 	
 	/**
@@ -750,13 +1066,15 @@ public class Parser {
 	private void parseComputation() {
 		if(expect(Token.MAIN)) {
 			consume(Token.MAIN);
-			Method mainMethod = new Method("main", false);
-			currentProgram.addMethod(mainMethod);
+			Method mainMethod = new Method("main", false, context);
+			if(methodListener == null) {
+				currentProgram.addMethod(mainMethod);
+			}
 			currentMethod = mainMethod;
 			EntryBlock entry = createEntryBlockForCurrentMethod();			
 			parseVarDeclaration(true);
 			
-			State beforeFunction = currentState.deepCopy();
+			State beforeFunction = currentState.snapshot();
 			parseFunctionDeclaration();
 			
 			//restore the states after function declaration
@@ -765,8 +1083,11 @@ public class Parser {
 			currentBlock = entry;
 			Block block = new Block(currentMethod);
 			endBlockWithJump(block);
-			block.setDominator(entry);
 			
+			//the functions are measured on their own
+			CompileStatistics.Measurement parse = beginPhase("parse", currentMethod);
+			ParseEvent event = new ParseEvent();
+			event.begin();
 			consume(Token.BEGIN);
 			ExitBlock exitBlock = new ExitBlock(currentMethod); //it is already created and set to current method
 			beginBlock(block);
@@ -777,9 +1098,67 @@ public class Parser {
 			consume(Token.END);
 			updateOperandsForPhi();
 			endExitBlock(exitBlock);
+			endParse(parse, event);
+			constructSSA();
+			if(methodListener != null) {
+				methodListener.methodBuilt(mainMethod);
+			}
 		}	
 	}
 	
+	private void addMethod(Method method) {
+		if(methodListener != null) {
+			methodListener.methodBuilt(method);
+		} else {
+			currentProgram.addMethod(method);
+		}
+	}
+	
+	private void constructSSA() {
+		if(isMemoryForm()) {
+			CompileStatistics.Measurement ssa = beginPhase("ssa", currentMethod);
+			SSAEvent event = new SSAEvent();
+			if(event.isEnabled()) {
+				event.instructionsBefore = CompilerEvents.instructions(currentMethod);
+			}
+			event.begin();
+			new SSAConstructor(currentMethod, currentProgram, ssaMode == SSAMode.PRUNED).construct();
+			event.end();
+			endPhase(ssa);
+			if(event.shouldCommit()) {
+				event.method = currentMethod.getName();
+				event.instructionsAfter = CompilerEvents.instructions(currentMethod);
+				event.phis = currentMethod.getPhiNumber();
+				event.commit();
+			}
+		}
+	}
+	
+	private void endParse(CompileStatistics.Measurement measurement, ParseEvent event) {
+		event.end();
+		endPhase(measurement);
+		if(event.shouldCommit()) {
+			event.method = currentMethod.getName();
+			event.blocks = currentMethod.getBlocks().size();
+			event.instructions = CompilerEvents.instructions(currentMethod);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * @return null if the statistics are not measured
+	 */
+	private CompileStatistics.Measurement beginPhase(String phase, Method method) {
+		CompileStatistics statistics = context.getStatistics();
+		return statistics != null ? statistics.begin(phase, method) : null;
+	}
+	
+	private void endPhase(CompileStatistics.Measurement measurement) {
+		if(measurement != null) {
+			measurement.end(currentMethod);
+		}
+	}
+	
 	private void updateOperandsForPhi() {
 		for(Block block:currentMethod.getBlocks()) {
 			if(block.isJoin()) {
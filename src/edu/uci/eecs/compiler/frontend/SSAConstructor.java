@@ -0,0 +1,358 @@
+package edu.uci.eecs.compiler.frontend;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+import edu.uci.eecs.compiler.model.DominatorTree;
+import edu.uci.eecs.compiler.model.Method;
+import edu.uci.eecs.compiler.model.Program;
+import edu.uci.eecs.compiler.representation.Block;
+import edu.uci.eecs.compiler.representation.Block.JoinBlock;
+import edu.uci.eecs.compiler.representation.SSAInstruction;
+import edu.uci.eecs.compiler.representation.SSAInstruction.*;
+import edu.uci.eecs.compiler.util.Interner;
+import edu.uci.eecs.compiler.util.SymbolType;
+
+/**
+ * Minimal SSA construction for the local variables of one method (Cytron et al.).
+ *
+ * In MINIMAL mode the Parser keeps local variables in memory form: a read is a
+ * LoadVariableSSAInstruction and an assignment a StoreVariableSSAInstruction.
+ *  1) Dominance frontiers are computed from the dominator tree of the method.
+ *  2) For each variable a phi is placed at the iterated dominance frontier of the blocks
+ *     that store it, instead of one phi per symbol at every join.
+ *  3) Variables are renamed by walking the dominator tree: loads are replaced by the
+ *     reaching value and stores are removed.
+ * Global variables stay as memory operations.
+ *
+ * When pruned, a backwards liveness pass runs before 2) and a phi is only materialized
+ * if its variable is live-in at the join. The placement still walks the whole iterated
+ * frontier, so the number of suppressed phis is the reduction against minimal SSA.
+ *
+ */
+public class SSAConstructor {
+
+	private Method method;
+	private Program program;
+	private Interner interner;
+
+	private List<Block> blocks;
+	private HashMap<Block, Integer> indexes;
+	private List<List<Block>> frontiers;
+	private DominatorTree dominatorTree;
+	private boolean[] locals;
+	private boolean pruned;
+	private BitSet[] liveIn;
+
+	//current value of every variable while renaming, changes are undone after a subtree
+	private SSAInstruction[] values;
+	private int[] undoIds;
+	private SSAInstruction[] undoValues;
+	private int undoSize;
+	private SSAInstruction undefined;
+
+	private int phiCount;
+	private int suppressedPhiCount;
+
+	public SSAConstructor(Method method, Program program) {
+		this(method, program, false);
+	}
+
+	public SSAConstructor(Method method, Program program, boolean pruned) {
+		this.method = method;
+		this.program = program;
+		this.interner = program.getInterner();
+		this.pruned = pruned;
+	}
+
+	public void construct() {
+		indexBlocks();
+		findLocalVariables();
+		computeDominanceFrontiers();
+		if(pruned) {
+			computeLiveness();
+		}
+		placePhis();
+		rename();
+		method.setPhiStatistics(phiCount, suppressedPhiCount);
+	}
+
+	/**
+	 * @return number of phis placed for the method
+	 */
+	public int getPhiCount() {
+		return phiCount;
+	}
+
+	/**
+	 * @return number of phis of minimal SSA that were not placed because the variable is dead
+	 */
+	public int getSuppressedPhiCount() {
+		return suppressedPhiCount;
+	}
+
+	private void indexBlocks() {
+		blocks = method.getBlocks();
+		indexes = new HashMap<Block, Integer>();
+		frontiers = new ArrayList<List<Block>>(blocks.size());
+		for(int i = 0; i < blocks.size(); i++) {
+			indexes.put(blocks.get(i), i);
+			frontiers.add(new ArrayList<Block>());
+		}
+		dominatorTree = method.getDominatorTree();
+	}
+
+	private void findLocalVariables() {
+		locals = new boolean[interner.size()];
+		for(int id : method.getSymbolIds()) {
+			locals[id] = method.getSymbolType(id) == SymbolType.INTEGER && !program.hasVariable(id);
+		}
+	}
+
+	private boolean isLocal(int id) {
+		return id < locals.length && locals[id];
+	}
+
+	/**
+	 * For every join, walk up from each predecessor to the immediate dominator of the
+	 * join, the join is in the frontier of every block on the way.
+	 */
+	private void computeDominanceFrontiers() {
+		for(Block block : blocks) {
+			Block dominator = block.getDominator();
+			if(block.getPrecdentBlockNumber() < 2 || !dominatorTree.isReachable(block)) {
+				continue;
+			}
+			for(Block precedent : block.getPrecedentBlocks()) {
+				Block runner = precedent;
+				while(runner != null && runner != dominator && dominatorTree.isReachable(runner)) {
+					List<Block> frontier = frontiers.get(indexes.get(runner));
+					if(frontier.isEmpty() || frontier.get(frontier.size() - 1) != block) {
+						frontier.add(block);
+					}
+					runner = runner.getDominator();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Backwards liveness of the local variables on the memory form, before any phi exists.
+	 * liveIn(b) = upwardExposed(b) + (liveOut(b) - killed(b)), liveOut(b) = union of liveIn
+	 * of the successors. Blocks are visited in reverse order until nothing changes.
+	 */
+	private void computeLiveness() {
+		int size = blocks.size();
+		BitSet[] upwardExposed = new BitSet[size];
+		BitSet[] killed = new BitSet[size];
+		liveIn = new BitSet[size];
+		for(int i = 0; i < size; i++) {
+			BitSet uses = new BitSet();
+			BitSet definitions = new BitSet();
+			for(SSAInstruction instruction : blocks.get(i).getInstructions()) {
+				if(instruction instanceof LoadVariableSSAInstruction) {
+					int id = ((LoadVariableSSAInstruction)instruction).getVariableId();
+					if(isLocal(id) && !definitions.get(id)) {
+						uses.set(id);
+					}
+				} else if(instruction instanceof StoreVariableSSAInstruction) {
+					int id = ((StoreVariableSSAInstruction)instruction).getVariableId();
+					if(isLocal(id)) {
+						definitions.set(id);
+					}
+				}
+			}
+			upwardExposed[i] = uses;
+			killed[i] = definitions;
+			liveIn[i] = (BitSet)uses.clone();
+		}
+
+		BitSet liveOut = new BitSet();
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(int i = size - 1; i >= 0; i--) {
+				liveOut.clear();
+				for(Block successor : blocks.get(i).getSubsequentBlocks()) {
+					Integer index = indexes.get(successor);
+					if(index != null) {
+						liveOut.or(liveIn[index]);
+					}
+				}
+				liveOut.andNot(killed[i]);
+				liveOut.or(upwardExposed[i]);
+				if(!liveOut.equals(liveIn[i])) {
+					liveIn[i] = (BitSet)liveOut.clone();
+					changed = true;
+				}
+			}
+		}
+	}
+
+	private void placePhis() {
+		//blocks storing each local variable
+		List<List<Block>> definitions = new ArrayList<List<Block>>(locals.length);
+		for(int i = 0; i < locals.length; i++) {
+			definitions.add(null);
+		}
+		for(Block block : blocks) {
+			for(SSAInstruction instruction : block.getInstructions()) {
+				if(instruction instanceof StoreVariableSSAInstruction) {
+					int id = ((StoreVariableSSAInstruction)instruction).getVariableId();
+					if(!isLocal(id)) {
+						continue;
+					}
+					List<Block> definition = definitions.get(id);
+					if(definition == null) {
+						definition = new ArrayList<Block>();
+						definitions.set(id, definition);
+					}
+					if(definition.isEmpty() || definition.get(definition.size() - 1) != block) {
+						definition.add(block);
+					}
+				}
+			}
+		}
+
+		//stamped with id + 1, so they don't need to be cleared between variables
+		int[] hasPhi = new int[blocks.size()];
+		int[] inWorklist = new int[blocks.size()];
+		List<Block> worklist = new ArrayList<Block>();
+		for(int id = 0; id < locals.length; id++) {
+			List<Block> definition = definitions.get(id);
+			if(definition == null) {
+				continue;
+			}
+
+			for(Block block : definition) {
+				inWorklist[indexes.get(block)] = id + 1;
+				worklist.add(block);
+			}
+			while(!worklist.isEmpty()) {
+				Block block = worklist.remove(worklist.size() - 1);
+				for(Block frontier : frontiers.get(indexes.get(block))) {
+					int index = indexes.get(frontier);
+					if(hasPhi[index] == id + 1) {
+						continue;
+					}
+					hasPhi[index] = id + 1;
+					if(pruned && !liveIn[index].get(id)) {
+						suppressedPhiCount++;
+					} else {
+						addPhi(frontier, id);
+					}
+					if(inWorklist[index] != id + 1) {
+						inWorklist[index] = id + 1;
+						worklist.add(frontier);
+					}
+				}
+			}
+		}
+	}
+
+	private void addPhi(Block block, int id) {
+		PhiSSAInstruction phi = new PhiSSAInstruction(block, id, interner.getName(id));
+		((JoinBlock)block).addPhiInstruction(phi);
+		phiCount++;
+	}
+
+	private void rename() {
+		values = new SSAInstruction[locals.length];
+		undoIds = new int[16];
+		undoValues = new SSAInstruction[16];
+		undefined = SSAInstruction.createInitialValue(method.getContext());
+
+		//iterative walk of the dominator tree, deep nesting would overflow the java stack
+		List<Block> stack = new ArrayList<Block>();
+		List<Integer> marks = new ArrayList<Integer>();
+		List<Integer> nexts = new ArrayList<Integer>();
+		for(Block block : blocks) {
+			if(block.getDominator() == null) {
+				marks.add(undoSize);
+				renameBlock(block);
+				stack.add(block);
+				nexts.add(0);
+			}
+
+			while(!stack.isEmpty()) {
+				int top = stack.size() - 1;
+				List<Block> blockChildren = dominatorTree.getChildren(stack.get(top));
+				int next = nexts.get(top);
+				if(next < blockChildren.size()) {
+					nexts.set(top, next + 1);
+					Block child = blockChildren.get(next);
+					marks.add(undoSize);
+					renameBlock(child);
+					stack.add(child);
+					nexts.add(0);
+				} else {
+					undo(marks.remove(top));
+					stack.remove(top);
+					nexts.remove(top);
+				}
+			}
+		}
+	}
+
+	private void renameBlock(Block block) {
+		if(block instanceof JoinBlock) {
+			for(PhiSSAInstruction phi : ((JoinBlock)block).getAllPhis()) {
+				define(phi.getVariableId(), phi);
+			}
+		}
+
+		ArrayList<SSAInstruction> instructions = new ArrayList<SSAInstruction>(block.getInstructions().size());
+		for(SSAInstruction instruction : block.getInstructions()) {
+			if(instruction instanceof LoadVariableSSAInstruction
+					&& isLocal(((LoadVariableSSAInstruction)instruction).getVariableId())) {
+				instruction.replaceUsages(read(((LoadVariableSSAInstruction)instruction).getVariableId()));
+			} else if(instruction instanceof StoreVariableSSAInstruction
+					&& isLocal(((StoreVariableSSAInstruction)instruction).getVariableId())) {
+				StoreVariableSSAInstruction store = (StoreVariableSSAInstruction)instruction;
+				store.getValue().removeUsage(store);
+				define(store.getVariableId(), store.getValue());
+			} else {
+				instructions.add(instruction);
+			}
+		}
+		block.setInstructions(instructions);
+
+		for(Block successor : block.getSubsequentBlocks()) {
+			if(successor instanceof JoinBlock) {
+				for(PhiSSAInstruction phi : ((JoinBlock)successor).getAllPhis()) {
+					phi.addOperand(block, read(phi.getVariableId()));
+				}
+			}
+		}
+	}
+
+	private SSAInstruction read(int id) {
+		SSAInstruction value = values[id];
+		return value != null ? value : undefined;
+	}
+
+	private void define(int id, SSAInstruction value) {
+		if(undoSize == undoIds.length) {
+			int[] newIds = new int[undoSize * 2];
+			SSAInstruction[] newValues = new SSAInstruction[undoSize * 2];
+			System.arraycopy(undoIds, 0, newIds, 0, undoSize);
+			System.arraycopy(undoValues, 0, newValues, 0, undoSize);
+			undoIds = newIds;
+			undoValues = newValues;
+		}
+		undoIds[undoSize] = id;
+		undoValues[undoSize] = values[id];
+		undoSize++;
+		values[id] = value;
+	}
+
+	private void undo(int mark) {
+		while(undoSize > mark) {
+			undoSize--;
+			values[undoIds[undoSize]] = undoValues[undoSize];
+			undoValues[undoSize] = null;
+		}
+	}
+}
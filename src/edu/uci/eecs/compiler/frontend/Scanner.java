@@ -3,20 +3,56 @@ package edu.uci.eecs.compiler.frontend;
 import java.io.StreamTokenizer;
 import java.io.File;
 import java.io.FileReader;
-import java.io.StringReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
+import edu.uci.eecs.compiler.model.CompilationContext;
+import edu.uci.eecs.compiler.util.CompilerEvents.ScanEvent;
+import edu.uci.eecs.compiler.util.Interner;
 import edu.uci.eecs.compiler.util.Token;
 
+/**
+ * Scanner on StreamTokenizer. Tokens are scanned ahead in chunks into a ring, so the
+ * Parser can peek any number of tokens ahead without scanning them again. Every slot
+ * keeps what the getters return for its token.
+ */
 public class Scanner {
 
+	private static final int CHUNK_SIZE = 32;
+
 	private StreamTokenizer tokenizer;
-	private Token currentToken;
+	private FileReader reader;
+	private Interner interner;
+	private CompilationContext context;
+	//lexical errors found before there is a context, the first chunk is scanned by the constructor
+	private List<String> pending = new ArrayList<String>();
+	
+	//the ring, the current token is at head
+	private Token[] tokens;
+	private int[] numbers;
+	private int[] ids;
+	private String[] contents;
+	private int[] lines;
+	private int head;
+	private int available;  //scanned tokens from head on
+	private boolean pushedBack;
+	
+	//StreamTokenizer keeps the last number, so does the ring
+	private int lastNumber;
+	private int lastId;
+	
+	/**
+	 * For subclasses that read the source by themselves.
+	 */
+	protected Scanner() {
+	}
 	
-	public Scanner(String fileName) {
+	public Scanner(String fileName, Interner interner) {
+		this.interner = interner;
+		allocateRing(2 * CHUNK_SIZE);
 		try{
-			FileReader reader = new FileReader(new File(fileName));
-			StringBuffer buffer = new StringBuffer("");
-			new StreamTokenizer(new StringReader(""));
+			reader = new FileReader(new File(fileName));
 			tokenizer = new StreamTokenizer(reader);
 			tokenizer.ordinaryChar('*');
 			tokenizer.ordinaryChar('/');
@@ -39,19 +75,130 @@ public class Scanner {
 			tokenizer.eolIsSignificant(false);
 			//tokenizer.whitespaceChars(' ', ' ');
 			
-			nextToken();
+			fill(CHUNK_SIZE);
 		} catch(Exception e){
 			System.out.println(e.toString());
 		}
 		
 	}
 	
+	private void allocateRing(int capacity) {
+		tokens = new Token[capacity];
+		numbers = new int[capacity];
+		ids = new int[capacity];
+		contents = new String[capacity];
+		lines = new int[capacity];
+	}
+	
 	public void nextToken() {
-		
+		if(pushedBack) {
+			pushedBack = false;
+			return;
+		}
+		head = (head + 1) & (tokens.length - 1);
+		available--;
+		if(available == 0) {
+			fill(CHUNK_SIZE);
+		}
+	}
+	
+	/**
+	 * @return the token k tokens after the current one, peek(0) is the current token
+	 */
+	public Token peek(int k) {
+		int slot = slot(k);
+		return slot >= 0 ? tokens[slot] : Token.EOF;
+	}
+	
+	/**
+	 * @return the id of the identifier k tokens after the current one
+	 */
+	public int peekId(int k) {
+		int slot = slot(k);
+		return slot >= 0 ? ids[slot] : lastId;
+	}
+	
+	/**
+	 * @return the number k tokens after the current one, or the last number before it
+	 */
+	public int peekNumber(int k) {
+		int slot = slot(k);
+		return slot >= 0 ? numbers[slot] : lastNumber;
+	}
+	
+	/**
+	 * @return the slot of the token k tokens after the current one, -1 after the end
+	 */
+	private int slot(int k) {
+		if(pushedBack && k > 0) {
+			k--;
+		}
+		if(k >= available) {
+			fill(Math.max(k + 1, CHUNK_SIZE));
+			if(k >= available) {
+				return -1;
+			}
+		}
+		return (head + k) & (tokens.length - 1);
+	}
+	
+	/**
+	 * Scan until there are that many tokens from head on, or the source ends.
+	 */
+	private void fill(int count) {
+		ScanEvent event = new ScanEvent();
+		event.begin();
+		long start = System.nanoTime();
+		int scanned = available;
+		while(available < count) {
+			if(available > 0 && tokens[(head + available - 1) & (tokens.length - 1)] == Token.EOF) {
+				break;
+			}
+			if(available == tokens.length) {
+				grow();
+			}
+			scan((head + available) & (tokens.length - 1));
+			available++;
+		}
+		event.end();
+		if(event.shouldCommit()) {
+			event.tokens = available - scanned;
+			event.scanTime = System.nanoTime() - start;
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Double the ring for a peek further ahead than it holds.
+	 */
+	private void grow() {
+		Token[] oldTokens = tokens;
+		int[] oldNumbers = numbers;
+		int[] oldIds = ids;
+		String[] oldContents = contents;
+		int[] oldLines = lines;
+		int mask = oldTokens.length - 1;
+		allocateRing(oldTokens.length * 2);
+		for(int i = 0; i < available; i++) {
+			int from = (head + i) & mask;
+			tokens[i] = oldTokens[from];
+			numbers[i] = oldNumbers[from];
+			ids[i] = oldIds[from];
+			contents[i] = oldContents[from];
+			lines[i] = oldLines[from];
+		}
+		head = 0;
+	}
+	
+	private void scan(int slot) {
+		Token currentToken = null;
+		contents[slot] = null;
 		try {
-			if(this.tokenizer.nextToken() != StreamTokenizer.TT_EOF) {
-				
-				if(tokenizer.ttype == StreamTokenizer.TT_WORD) {
+			while(currentToken == null) {
+				if(this.tokenizer.nextToken() == StreamTokenizer.TT_EOF) {
+					currentToken = Token.EOF;
+					
+				} else if(tokenizer.ttype == StreamTokenizer.TT_WORD) {
 					
 					if(tokenizer.sval.equals("main")) {
 						currentToken = Token.MAIN;
@@ -85,116 +232,167 @@ public class Scanner {
 						currentToken = Token.PROCEDURE;
 					} else {
 						currentToken = Token.IDENTIFIER;
+						lastId = interner.intern(tokenizer.sval);
 					}
+					contents[slot] = tokenizer.sval;
 					
 				} else if(tokenizer.ttype == StreamTokenizer.TT_NUMBER) {
 					
 					currentToken = Token.NUMBER;
+					lastNumber = (int)tokenizer.nval;
 					
 				} else {
-					
-					switch (tokenizer.ttype) {
-						
-						case '(':
-							currentToken = Token.OPENPARENTHESES;
-							break;
-						case ')':
-							currentToken = Token.CLOSEPARENTHESES;
-							break;
-						case '[':
-							currentToken = Token.OPENBRACKET;
-							break;
-						case ']':
-							currentToken = Token.CLOSEBRACKET;
-							break;
-						case '{':
-							currentToken = Token.BEGIN;
-							break;
-						case '}':
-							currentToken = Token.END;
-							break;
-						case '*':
-							currentToken = Token.TIMES;
-							break;
-						case '/':
-							currentToken = Token.DIVIDE;
-							break;
-						case '+':
-							currentToken = Token.PLUS;
-							break;
-						case '-':
-							currentToken = Token.MINUS;
-							break;
-						case ',':
-							currentToken = Token.COMMA;
-							break;
-						case ';':
-							currentToken = Token.SEMICOLON;
-							break;
-						case '.':
-							currentToken = Token.PERIOD;
-							break;
-						case '<':
-							tokenizer.nextToken();
-							if(tokenizer.ttype == '=') {
-								currentToken = Token.LEQUAL;
-							} else if (tokenizer.ttype == '-') {
-								currentToken = Token.ASSIGNMENT;
-							} else {
-								tokenizer.pushBack();
-								currentToken = Token.LESS;
-							}
-							break;
-						case '>':
-							tokenizer.nextToken();
-							if(tokenizer.ttype == '=') {
-								currentToken = Token.GEQUAL;
-							} else {
-								tokenizer.pushBack();
-								currentToken = Token.LESS;
-							}
-							break;
-					}
+					currentToken = scanSymbol();
 				}
 			}
-		} catch (Exception e) {
+		} catch (IOException e) {
 			System.out.println(e.toString());
+			currentToken = Token.EOF;
+		}
+		tokens[slot] = currentToken;
+		numbers[slot] = lastNumber;
+		ids[slot] = lastId;
+		lines[slot] = tokenizer.lineno();
+	}
+	
+	/**
+	 * @return the token of an ordinary character, null if it is no token
+	 */
+	private Token scanSymbol() throws IOException {
+		switch (tokenizer.ttype) {
+			
+			case '(':
+				return Token.OPENPARENTHESES;
+			case ')':
+				return Token.CLOSEPARENTHESES;
+			case '[':
+				return Token.OPENBRACKET;
+			case ']':
+				return Token.CLOSEBRACKET;
+			case '{':
+				return Token.BEGIN;
+			case '}':
+				return Token.END;
+			case '*':
+				return Token.TIMES;
+			case '/':
+				return Token.DIVIDE;
+			case '+':
+				return Token.PLUS;
+			case '-':
+				return Token.MINUS;
+			case ',':
+				return Token.COMMA;
+			case ';':
+				return Token.SEMICOLON;
+			case '.':
+				return Token.PERIOD;
+			case '<':
+				tokenizer.nextToken();
+				if(tokenizer.ttype == '=') {
+					return Token.LEQUAL;
+				} else if (tokenizer.ttype == '-') {
+					return Token.ASSIGNMENT;
+				}
+				tokenizer.pushBack();
+				return Token.LESS;
+			case '>':
+				tokenizer.nextToken();
+				if(tokenizer.ttype == '=') {
+					return Token.GEQUAL;
+				}
+				tokenizer.pushBack();
+				return Token.GREATER;
+			default:
+				report("Unexpected character '" + (char)tokenizer.ttype + "' at line " + tokenizer.lineno());
+				return null;
 		}
 	}
 	
 	public boolean expectToken(Token token) {
 		
-		if(token!= null && currentToken.equals(token))
+		if(token!= null && tokens[head] == token)
 			return true;
 		
 		return false;
 	}
 	
+	/**
+	 * The current token will be returned again by the next call of nextToken().
+	 */
 	public void pushBack() {
-		this.tokenizer.pushBack();
+		pushedBack = true;
 	}
 	
 	public int getCurrentNumber() {
-		return (int)this.tokenizer.nval;
+		return numbers[head];
 	}
 	
 	public String getCurrentContent() {
-		return this.tokenizer.sval;
+		return contents[head];
+	}
+	
+	/**
+	 * @return the id of current identifier given by the Interner
+	 */
+	public int getCurrentId() {
+		return ids[head];
+	}
+	
+	/**
+	 * Lexical errors go to the diagnostics of the context, also those found before it was set.
+	 * Without a context they are printed when the scanner is closed.
+	 */
+	public void setContext(CompilationContext context) {
+		this.context = context;
+		for(String diagnostic : pending) {
+			context.report(diagnostic);
+		}
+		pending.clear();
+	}
+	
+	public CompilationContext getContext() {
+		return context;
+	}
+	
+	protected void report(String diagnostic) {
+		if(context != null) {
+			context.report(diagnostic);
+		} else {
+			pending.add(diagnostic);
+		}
 	}
 	
 	public int getLineNumber() {
-		return this.tokenizer.lineno();
+		return lines[head];
+	}
+	
+	/**
+	 * Release the source file, the scanner can't be used afterwards.
+	 */
+	public void close() {
+		for(String diagnostic : pending) {
+			System.out.println(diagnostic);
+		}
+		pending.clear();
+		try {
+			if(reader != null) {
+				reader.close();
+			}
+		} catch(IOException e) {
+			System.out.println(e.toString());
+		}
 	}
 	
 	public void print() {
 		nextToken();
-		while(currentToken != Token.EOF) {
-			if(currentToken == Token.NUMBER) {
+		while(tokens[head] != Token.EOF) {
+			if(tokens[head] == Token.NUMBER) {
 				
-				System.out.println(currentToken.name() + ": " + tokenizer.nval);
+				System.out.println(tokens[head].name() + ": " + getCurrentNumber());
 			} else {
 				
-				System.out.println(currentToken.name() + ": " + tokenizer.sval);
+				System.out.println(tokens[head].name() + ": " + getCurrentContent());
 			}
 			nextToken();
 		}
@@ -0,0 +1,192 @@
+package edu.uci.eecs.compiler.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.uci.eecs.compiler.representation.Block;
+import edu.uci.eecs.compiler.representation.Block.JoinBlock;
+import edu.uci.eecs.compiler.representation.SSAInstruction;
+import edu.uci.eecs.compiler.util.Interner;
+
+/**
+ * State of one compilation: block and instruction ids, the identifiers, the diagnostics
+ * and the statistics. Nothing is static, so several programs can be compiled
+ * at the same time in one JVM.
+ *
+ * Ids can be taken from several threads, e.g. when methods are optimized in parallel.
+ * The interner is filled by the Parser and only read afterwards.
+ *
+ * A function parsed on its own thread gets a function context, its ids start at zero
+ * and are moved behind the ids of the program when the method is merged.
+ *
+ */
+public class CompilationContext {
+
+	private Interner interner;
+	private AtomicInteger nextBlockId;
+	private AtomicInteger nextInstructionNumber;
+	private List<String> diagnostics;
+	private boolean printDiagnostics;
+	private CompileStatistics statistics;
+	//instructions numbered by a function context or by a context that keeps them
+	private List<SSAInstruction> numbered;
+
+	public CompilationContext() {
+		this(new Interner());
+	}
+
+	public CompilationContext(Interner interner) {
+		this.interner = interner;
+		this.nextBlockId = new AtomicInteger();
+		this.nextInstructionNumber = new AtomicInteger();
+		this.diagnostics = new ArrayList<String>();
+		this.printDiagnostics = true;
+	}
+
+	public Interner getInterner() {
+		return interner;
+	}
+
+	public int nextBlockId() {
+		return nextBlockId.getAndIncrement();
+	}
+
+	public int nextInstructionNumber(SSAInstruction instruction) {
+		if(numbered != null) {
+			numbered.add(instruction);
+		}
+		return nextInstructionNumber.getAndIncrement();
+	}
+	
+	/**
+	 * @return context for the parse of one function, its diagnostics are kept until it is merged
+	 */
+	public CompilationContext createFunctionContext() {
+		CompilationContext context = new CompilationContext(interner);
+		context.printDiagnostics = false;
+		context.numbered = new ArrayList<SSAInstruction>();
+		context.statistics = statistics;
+		return context;
+	}
+	
+	/**
+	 * Take over a method built with a function context. Merging the methods in source
+	 * order gives the same ids as building them one after another with this context.
+	 */
+	public void merge(CompilationContext functionContext, Method method) {
+		int blockBase = nextBlockId.getAndAdd(functionContext.getBlockNumber());
+		int instructionBase = nextInstructionNumber.getAndAdd(functionContext.getInstructionNumber());
+		for(Block block : method.getBlocks()) {
+			block.moveId(blockBase);
+		}
+		for(SSAInstruction instruction : functionContext.numbered) {
+			instruction.moveNumber(instructionBase);
+		}
+		method.setContext(this);
+		for(String diagnostic : functionContext.getDiagnostics()) {
+			report(diagnostic);
+		}
+	}
+
+	/**
+	 * @return number of instructions created so far
+	 */
+	public int getInstructionNumber() {
+		return nextInstructionNumber.get();
+	}
+
+	public int getBlockNumber() {
+		return nextBlockId.get();
+	}
+
+	/**
+	 * Keep every instruction numbered from now on, the instruction with number n is
+	 * at index n of getNumbered. Call it before the first instruction is created.
+	 */
+	public void keepNumbered() {
+		numbered = new ArrayList<SSAInstruction>();
+	}
+
+	/**
+	 * @return the kept instructions with a number from first up to end
+	 */
+	public List<SSAInstruction> getNumbered(int first, int end) {
+		return new ArrayList<SSAInstruction>(numbered.subList(first, end));
+	}
+
+	/**
+	 * Give the next ids to a method taken over from an earlier compilation, the ids it
+	 * had there are moved so they are the same as if it was built again.
+	 * @param blockId first block id of the method in the earlier compilation
+	 * @param blockNumber number of block ids the method took
+	 * @param instructions instructions numbered while the method was built, in order
+	 */
+	public void takeOver(Method method, int blockId, int blockNumber, List<SSAInstruction> instructions) {
+		int blockBase = nextBlockId.getAndAdd(blockNumber);
+		int instructionBase = nextInstructionNumber.getAndAdd(instructions.size());
+		if(!instructions.isEmpty()) {
+			int first = instructions.get(0).getInstructionId();
+			for(Block block : method.getBlocks()) {
+				if(block instanceof JoinBlock) {
+					keepReplaced(((JoinBlock)block).getAllPhis(), instructions, first);
+				}
+				keepReplaced(block.getInstructions(), instructions, first);
+			}
+			for(SSAInstruction instruction : instructions) {
+				instruction.moveNumber(instructionBase - first);
+			}
+		}
+		for(Block block : method.getBlocks()) {
+			block.moveId(blockBase - blockId);
+		}
+		if(numbered != null) {
+			numbered.addAll(instructions);
+		}
+		method.setContext(this);
+	}
+
+	/**
+	 * An instruction replaced in place by a pass has the number of the one it replaced,
+	 * it takes its place in the instructions.
+	 */
+	private static void keepReplaced(List<? extends SSAInstruction> placed, List<SSAInstruction> instructions,
+			int first) {
+		for(SSAInstruction instruction : placed) {
+			int index = instruction.getInstructionId() - first;
+			if(index >= 0 && index < instructions.size()) {
+				instructions.set(index, instruction);
+			}
+		}
+	}
+
+	/**
+	 * Keep an error or warning of the compilation, it is also printed unless
+	 * printing is turned off.
+	 */
+	public synchronized void report(String diagnostic) {
+		diagnostics.add(diagnostic);
+		if(printDiagnostics) {
+			System.out.println(diagnostic);
+		}
+	}
+
+	public synchronized List<String> getDiagnostics() {
+		return new ArrayList<String>(diagnostics);
+	}
+
+	public void setPrintDiagnostics(boolean printDiagnostics) {
+		this.printDiagnostics = printDiagnostics;
+	}
+
+	/**
+	 * @return statistics of the phases or null if they are not measured
+	 */
+	public CompileStatistics getStatistics() {
+		return statistics;
+	}
+
+	public void setStatistics(CompileStatistics statistics) {
+		this.statistics = statistics;
+	}
+}
@@ -0,0 +1,263 @@
+package edu.uci.eecs.compiler.model;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+import edu.uci.eecs.compiler.representation.Block;
+import edu.uci.eecs.compiler.representation.SSAInstruction;
+import edu.uci.eecs.compiler.representation.SSAInstruction.PhiSSAInstruction;
+import edu.uci.eecs.compiler.util.Constant;
+
+/**
+ * Wall and CPU time of the phases of one compilation, with the blocks, instructions
+ * and phis of the method before and after every phase. A phase of the whole program
+ * has no method. Phases can be measured on several threads, the CPU time of a phase
+ * is the time of the thread it ran on.
+ *
+ * With allocation accounting every phase also gets the bytes allocated by its thread,
+ * from the allocation counter of the HotSpot thread bean, and the IR objects retained
+ * by the method after it: blocks and instructions per class, the states of the blocks
+ * and the trie nodes of the states, and one UsageList per instruction.
+ *
+ * The report is written as JSON, one entry per phase in the order they ended and the
+ * sums per phase name.
+ *
+ */
+public class CompileStatistics {
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private boolean allocations;
+	private List<Measurement> measurements;
+
+	/**
+	 * One run of a phase, it is kept by the statistics when it ends.
+	 */
+	public class Measurement {
+		private String phase;
+		private String method;
+		private long wallTime;
+		private long cpuTime;
+		private int[] before;
+		private int[] after;
+		private long allocated;
+		private Map<String, Integer> retained;
+
+		private Measurement(String phase, Method method) {
+			this.phase = phase;
+			this.before = size(method);
+			this.allocated = allocations ? allocatedBytes() : -1;
+			this.cpuTime = cpuTime();
+			this.wallTime = System.nanoTime();
+		}
+
+		/**
+		 * @param method the method after the phase, null for a phase of the program
+		 */
+		public void end(Method method) {
+			wallTime = System.nanoTime() - wallTime;
+			long cpu = cpuTime();
+			cpuTime = cpu < 0 || cpuTime < 0 ? -1 : cpu - cpuTime;
+			if(allocations) {
+				long bytes = allocatedBytes();
+				allocated = bytes < 0 || allocated < 0 ? -1 : bytes - allocated;
+				retained = method != null ? countRetained(method) : null;
+			}
+			this.method = method != null ? method.getName() : null;
+			this.after = size(method);
+			add(this);
+		}
+	}
+
+	public CompileStatistics() {
+		this(false);
+	}
+
+	/**
+	 * @param allocations whether the allocated bytes and the retained objects are counted
+	 */
+	public CompileStatistics(boolean allocations) {
+		this.allocations = allocations;
+		this.measurements = new ArrayList<Measurement>();
+	}
+
+	/**
+	 * @param method the method before the phase, null if it doesn't exist yet
+	 */
+	public Measurement begin(String phase, Method method) {
+		return new Measurement(phase, method);
+	}
+
+	private synchronized void add(Measurement measurement) {
+		measurements.add(measurement);
+	}
+
+	/**
+	 * @return blocks, instructions and phis of the method
+	 */
+	private static int[] size(Method method) {
+		int[] size = new int[3];
+		if(method == null) {
+			return size;
+		}
+		for(Block block : method.getBlocks()) {
+			size[0]++;
+			for(SSAInstruction instruction : block.getInstructions()) {
+				size[1]++;
+				if(instruction instanceof PhiSSAInstruction) {
+					size[2]++;
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return objects reachable from the blocks of the method per class name
+	 */
+	private static Map<String, Integer> countRetained(Method method) {
+		TreeMap<String, Integer> counts = new TreeMap<String, Integer>();
+		Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		Set<Object> nodes = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		int nodeCount = 0;
+		for(Block block : method.getBlocks()) {
+			count(counts, block.getClass().getSimpleName(), 1);
+			for(State state : new State[] {block.getBeginState(), block.getEndState()}) {
+				if(state != null && seen.add(state)) {
+					count(counts, "State", 1);
+					nodeCount += state.addNodes(nodes);
+				}
+			}
+			for(SSAInstruction instruction : block.getInstructions()) {
+				countInstruction(counts, seen, instruction);
+				for(SSAInstruction operand : instruction.getOperands()) {
+					countInstruction(counts, seen, operand);
+				}
+			}
+		}
+		if(nodeCount > 0) {
+			count(counts, "State.Node", nodeCount);
+		}
+		return counts;
+	}
+
+	private static void countInstruction(Map<String, Integer> counts, Set<Object> seen, SSAInstruction instruction) {
+		if(seen.add(instruction)) {
+			count(counts, instruction.getClass().getSimpleName(), 1);
+			count(counts, "UsageList", 1);
+		}
+	}
+
+	private static void count(Map<String, Integer> counts, String name, int number) {
+		Integer count = counts.get(name);
+		counts.put(name, count == null ? number : count + number);
+	}
+
+	/**
+	 * @return bytes allocated by the current thread so far, -1 if the JVM doesn't count them
+	 */
+	private static long allocatedBytes() {
+		if(THREADS instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)THREADS;
+			if(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+				return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	private static long cpuTime() {
+		return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+	}
+
+	/**
+	 * @param properties of the compilation, written in front of the phases
+	 */
+	public synchronized void toJson(Writer writer, Map<String, String> properties) throws IOException {
+		String separator = Constant.LINE_SEPARATER;
+		writer.write("{" + separator);
+		for(Entry<String, String> property : properties.entrySet()) {
+			writer.write("  " + quote(property.getKey()) + ": " + quote(property.getValue()) + "," + separator);
+		}
+
+		writer.write("  \"phases\": [");
+		LinkedHashMap<String, long[]> totals = new LinkedHashMap<String, long[]>();
+		for(int i = 0; i < measurements.size(); i++) {
+			Measurement measurement = measurements.get(i);
+			writer.write((i == 0 ? "" : ",") + separator + "    {\"phase\": " + quote(measurement.phase));
+			if(measurement.method != null) {
+				writer.write(", \"method\": " + quote(measurement.method));
+			}
+			writer.write(", \"wallNanos\": " + measurement.wallTime + ", \"cpuNanos\": " + measurement.cpuTime);
+			if(allocations) {
+				writer.write(", \"allocatedBytes\": " + measurement.allocated);
+			}
+			if(measurement.method != null) {
+				writer.write(", \"before\": " + sizeToJson(measurement.before)
+						+ ", \"after\": " + sizeToJson(measurement.after));
+			}
+			if(measurement.retained != null) {
+				writer.write(", \"retained\": {");
+				boolean first = true;
+				for(Entry<String, Integer> count : measurement.retained.entrySet()) {
+					writer.write((first ? "" : ", ") + quote(count.getKey()) + ": " + count.getValue());
+					first = false;
+				}
+				writer.write("}");
+			}
+			writer.write("}");
+
+			long[] total = totals.get(measurement.phase);
+			if(total == null) {
+				total = new long[4];
+				totals.put(measurement.phase, total);
+			}
+			total[0]++;
+			total[1] += measurement.wallTime;
+			total[2] += measurement.cpuTime < 0 ? 0 : measurement.cpuTime;
+			total[3] += measurement.allocated < 0 ? 0 : measurement.allocated;
+		}
+		writer.write(separator + "  ]," + separator);
+
+		writer.write("  \"totals\": {");
+		boolean first = true;
+		for(Entry<String, long[]> total : totals.entrySet()) {
+			writer.write((first ? "" : ",") + separator + "    " + quote(total.getKey()) + ": {\"count\": "
+					+ total.getValue()[0] + ", \"wallNanos\": " + total.getValue()[1]
+					+ ", \"cpuNanos\": " + total.getValue()[2]
+					+ (allocations ? ", \"allocatedBytes\": " + total.getValue()[3] : "") + "}");
+			first = false;
+		}
+		writer.write(separator + "  }" + separator + "}" + separator);
+	}
+
+	private static String sizeToJson(int[] size) {
+		return "{\"blocks\": " + size[0] + ", \"instructions\": " + size[1] + ", \"phis\": " + size[2] + "}";
+	}
+
+	private static String quote(String value) {
+		StringBuilder quoted = new StringBuilder("\"");
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if(c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if(c < 0x20) {
+				quoted.append(String.format("\\u%04x", (int)c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+}
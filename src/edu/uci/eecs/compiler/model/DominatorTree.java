@@ -1,24 +1,165 @@
 package edu.uci.eecs.compiler.model;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.ArrayList;
 import java.util.Map.Entry;
 
 import edu.uci.eecs.compiler.representation.Block;
+import edu.uci.eecs.compiler.representation.SSAInstruction;
 import edu.uci.eecs.compiler.util.Constant;
 
+/**
+ * Dominators of a method, computed with the iterative algorithm of Cooper, Harvey and
+ * Kennedy over the reverse postorder of the blocks reachable from the begin block.
+ * The immediate dominators are also set on the blocks, blocks that can't be reached
+ * get no dominator. The tree is rebuilt by Method after the control flow graph changes.
+ *
+ * Every block gets the preorder and postorder number of a walk over the tree, so a
+ * dominance query is two comparisons instead of a walk up the dominator chain.
+ *
+ */
 public class DominatorTree {
 	private Method method;
 	private HashMap<Block, List<Block>> dominatorMap;
-	
+
+	//blocks in postorder, a block is identified by its postorder number
+	private List<Block> postorder;
+	private HashMap<Block, Integer> numbers;
+	private int[] idoms;
+
 	public DominatorTree(Method method) {
 		this.method = method;
 		this.dominatorMap = new HashMap<Block, List<Block>>();
+		this.postorder = new ArrayList<Block>();
+		this.numbers = new HashMap<Block, Integer>();
 	}
-	
+
+	public void build() {
+		Block entry = method.getBeginBlock();
+		if(entry == null) {
+			return;
+		}
+		computePostorder(entry);
+		computeImmediateDominators();
+
+		for(Block block : method.getBlocks()) {
+			block.setDominator(null);
+			block.setDominatorInterval(-1, -1);
+		}
+		for(int i = 0; i < postorder.size(); i++) {
+			if(idoms[i] != i) {
+				Block block = postorder.get(i);
+				Block dominator = postorder.get(idoms[i]);
+				block.setDominator(dominator);
+				addDominatePair(dominator, block);
+			}
+		}
+		numberTree(entry);
+	}
+
+	private void numberTree(Block entry) {
+		List<Block> stack = new ArrayList<Block>();
+		List<Integer> nexts = new ArrayList<Integer>();
+		List<Integer> preorders = new ArrayList<Integer>();
+		int preorderNumber = 0;
+		int postorderNumber = 0;
+		stack.add(entry);
+		nexts.add(0);
+		preorders.add(preorderNumber++);
+		while(!stack.isEmpty()) {
+			int top = stack.size() - 1;
+			List<Block> children = getChildren(stack.get(top));
+			int next = nexts.get(top);
+			if(next < children.size()) {
+				nexts.set(top, next + 1);
+				stack.add(children.get(next));
+				nexts.add(0);
+				preorders.add(preorderNumber++);
+			} else {
+				stack.remove(top).setDominatorInterval(preorders.remove(top), postorderNumber++);
+				nexts.remove(top);
+			}
+		}
+	}
+
+	/**
+	 * Iterative depth first search, deeply nested code would overflow the java stack.
+	 */
+	private void computePostorder(Block entry) {
+		List<Block> stack = new ArrayList<Block>();
+		List<Integer> nexts = new ArrayList<Integer>();
+		HashMap<Block, Boolean> visited = new HashMap<Block, Boolean>();
+		visited.put(entry, Boolean.TRUE);
+		stack.add(entry);
+		nexts.add(0);
+		while(!stack.isEmpty()) {
+			int top = stack.size() - 1;
+			Block block = stack.get(top);
+			int next = nexts.get(top);
+			if(next < block.getSubsequentBlocks().size()) {
+				nexts.set(top, next + 1);
+				Block successor = block.getSubsequentBlocks().get(next);
+				if(visited.get(successor) == null) {
+					visited.put(successor, Boolean.TRUE);
+					stack.add(successor);
+					nexts.add(0);
+				}
+			} else {
+				numbers.put(block, postorder.size());
+				postorder.add(block);
+				stack.remove(top);
+				nexts.remove(top);
+			}
+		}
+	}
+
+	private void computeImmediateDominators() {
+		int size = postorder.size();
+		idoms = new int[size];
+		for(int i = 0; i < size; i++) {
+			idoms[i] = -1;
+		}
+		idoms[size - 1] = size - 1;   //the entry is the last block of the postorder
+
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(int i = size - 2; i >= 0; i--) {
+				int newIdom = -1;
+				for(Block precedent : postorder.get(i).getPrecedentBlocks()) {
+					Integer number = numbers.get(precedent);
+					if(number == null || idoms[number] == -1) {
+						continue;  //unreachable or not processed yet
+					}
+					newIdom = newIdom == -1 ? number : intersect(number, newIdom);
+				}
+				if(idoms[i] != newIdom) {
+					idoms[i] = newIdom;
+					changed = true;
+				}
+			}
+		}
+	}
+
+	private int intersect(int first, int second) {
+		while(first != second) {
+			while(first < second) {
+				first = idoms[first];
+			}
+			while(second < first) {
+				second = idoms[second];
+			}
+		}
+		return first;
+	}
+
 	public void addDominatePair(Block dominator, Block block) {
-		
+
 		if(dominatorMap.get(dominator)!=null) {
 			dominatorMap.get(dominator).add(block);
 		} else {
@@ -27,49 +168,82 @@ public class DominatorTree {
 			dominatorMap.put(dominator, blocks);
 		}
 	}
-	
+
+	/**
+	 * @return blocks immediately dominated by the block
+	 */
+	public List<Block> getChildren(Block block) {
+		List<Block> children = dominatorMap.get(block);
+		return children != null ? children : Collections.<Block>emptyList();
+	}
+
+	public Block getImmediateDominator(Block block) {
+		return block.getDominator();
+	}
+
+	/**
+	 * @return reachable blocks in reverse postorder, the begin block first
+	 */
+	public List<Block> getReversePostorder() {
+		List<Block> blocks = new ArrayList<Block>(postorder);
+		Collections.reverse(blocks);
+		return blocks;
+	}
+
+	public boolean isReachable(Block block) {
+		return numbers.containsKey(block);
+	}
+
+	/**
+	 * @return whether dominator strictly dominates block, false for unreachable blocks
+	 */
 	public boolean isDominator(Block dominator, Block block) {
-		
-		Block parent = block.getDominator();
-		while(parent!=null) {
-			if(parent.equals(dominator)) {
-				return true;
-			}
-			parent = parent.getDominator();
+
+		return dominator != block && dominator.getPreorder() >= 0 && block.getPreorder() >= 0
+				&& dominator.getPreorder() < block.getPreorder() && block.getPostorder() < dominator.getPostorder();
+	}
+
+	/**
+	 * @return whether the first instruction is executed before the second on every path
+	 */
+	public boolean isDominator(SSAInstruction dominator, SSAInstruction instruction) {
+		Block block = dominator.getBlock();
+		if(block == instruction.getBlock()) {
+			return block.getOrdinal(dominator) < block.getOrdinal(instruction);
 		}
-		return false;
+		return isDominator(block, instruction.getBlock());
 	}
-	
+
 	public String toGraph() {
-		
+		StringWriter writer = new StringWriter();
+		try {
+			toGraph(writer);
+		} catch (IOException e) {
+			//a StringWriter doesn't throw
+		}
+		return writer.toString();
+	}
+
+	public void toGraph(Writer writer) throws IOException {
+
 		//create clusters
-		String methodContent = "digraph " + method.getName() + "_dominator_tree {" + Constant.LINE_SEPARATER;
+		writer.write("digraph " + method.getName() + "_dominator_tree {" + Constant.LINE_SEPARATER);
 		for(Block block: method.getBlocks()) {
-			methodContent += block.toGraph() + Constant.LINE_SEPARATER;
+			block.toGraph(writer);
+			writer.write(Constant.LINE_SEPARATER);
 		}
-		
-		
+
+
 		for(Entry<Block, List<Block>> entry : dominatorMap.entrySet()) {
 			Block begin = entry.getKey();
 			for(Block end : entry.getValue()) {
-				methodContent += "\"end" + begin.getId() +"\" -> \"start" + end.getId()
+				writer.write("\"end" + begin.getId() +"\" -> \"start" + end.getId()
 						+ "\" [ltail=cluster" + begin.getId() + " lhead=cluster"
-						+ end.getId() +"];" + Constant.LINE_SEPARATER;
+						+ end.getId() +"];" + Constant.LINE_SEPARATER);
 			}
 		}
-		
-		methodContent += "}" + Constant.LINE_SEPARATER;
-		return methodContent;
-		
-		
-	}
-
-	/**
-	 * @param args
-	 */
-	public static void main(String[] args) {
-		// TODO Auto-generated method stub
 
+		writer.write("}" + Constant.LINE_SEPARATER);
 	}
 
 }
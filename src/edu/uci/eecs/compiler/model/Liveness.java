@@ -0,0 +1,139 @@
+package edu.uci.eecs.compiler.model;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+import edu.uci.eecs.compiler.representation.Block;
+import edu.uci.eecs.compiler.representation.Block.JoinBlock;
+import edu.uci.eecs.compiler.representation.SSAInstruction;
+import edu.uci.eecs.compiler.representation.SSAInstruction.PhiSSAInstruction;
+
+/**
+ * Live values of a method in SSA form, iterated backwards over the reachable blocks
+ * until nothing changes. The operand of a phi is live at the end of the precedent
+ * block it comes from, not at the begin of the join. Constants that are not placed
+ * in a block are never live.
+ *
+ */
+public class Liveness {
+	private Method method;
+
+	//values are numbered densely, the sets are bit sets over the numbers
+	private HashMap<SSAInstruction, Integer> numbers;
+	private List<SSAInstruction> values;
+	private HashMap<Block, BitSet> liveIn;
+	private HashMap<Block, BitSet> liveOut;
+
+	public Liveness(Method method) {
+		this.method = method;
+		this.numbers = new HashMap<SSAInstruction, Integer>();
+		this.values = new ArrayList<SSAInstruction>();
+		this.liveIn = new HashMap<Block, BitSet>();
+		this.liveOut = new HashMap<Block, BitSet>();
+	}
+
+	public void build(DominatorTree tree) {
+		List<Block> blocks = tree.getReversePostorder();
+		HashMap<Block, BitSet> upwardExposed = new HashMap<Block, BitSet>();
+		HashMap<Block, BitSet> defined = new HashMap<Block, BitSet>();
+		for(Block block : blocks) {
+			BitSet uses = new BitSet();
+			BitSet definitions = new BitSet();
+			for(SSAInstruction instruction : block.getInstructions()) {
+				if(!(instruction instanceof PhiSSAInstruction)) {
+					for(SSAInstruction operand : instruction.getOperands()) {
+						int number = number(operand);
+						if(number >= 0 && !definitions.get(number)) {
+							uses.set(number);
+						}
+					}
+				}
+				definitions.set(number(instruction));
+			}
+			upwardExposed.put(block, uses);
+			defined.put(block, definitions);
+			liveIn.put(block, (BitSet)uses.clone());
+			liveOut.put(block, new BitSet());
+		}
+
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(int i = blocks.size() - 1; i >= 0; i--) {
+				Block block = blocks.get(i);
+				BitSet out = new BitSet();
+				for(Block successor : block.getSubsequentBlocks()) {
+					BitSet in = liveIn.get(successor);
+					if(in == null) {
+						continue;
+					}
+					out.or(in);
+					if(successor instanceof JoinBlock) {
+						for(PhiSSAInstruction phi : ((JoinBlock)successor).getAllPhis()) {
+							out.clear(number(phi));
+							int operand = number(phi.getOperandForBlock(block));
+							if(operand >= 0) {
+								out.set(operand);
+							}
+						}
+					}
+				}
+				liveOut.put(block, out);
+
+				BitSet in = (BitSet)out.clone();
+				in.andNot(defined.get(block));
+				in.or(upwardExposed.get(block));
+				if(!in.equals(liveIn.get(block))) {
+					liveIn.put(block, in);
+					changed = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return dense number of the value, -1 if it is not placed in a block
+	 */
+	private int number(SSAInstruction instruction) {
+		if(instruction == null || instruction.getBlock() == null) {
+			return -1;
+		}
+		Integer number = numbers.get(instruction);
+		if(number == null) {
+			number = values.size();
+			numbers.put(instruction, number);
+			values.add(instruction);
+		}
+		return number;
+	}
+
+	public Method getMethod() {
+		return method;
+	}
+
+	public boolean isLiveIn(Block block, SSAInstruction value) {
+		return isLive(liveIn.get(block), value);
+	}
+
+	public boolean isLiveOut(Block block, SSAInstruction value) {
+		return isLive(liveOut.get(block), value);
+	}
+
+	private boolean isLive(BitSet live, SSAInstruction value) {
+		Integer number = numbers.get(value);
+		return live != null && number != null && live.get(number);
+	}
+
+	public List<SSAInstruction> getLiveOut(Block block) {
+		List<SSAInstruction> live = new ArrayList<SSAInstruction>();
+		BitSet out = liveOut.get(block);
+		if(out != null) {
+			for(int i = out.nextSetBit(0); i >= 0; i = out.nextSetBit(i + 1)) {
+				live.add(values.get(i));
+			}
+		}
+		return live;
+	}
+}
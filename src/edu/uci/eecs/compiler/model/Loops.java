@@ -0,0 +1,92 @@
+package edu.uci.eecs.compiler.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.uci.eecs.compiler.representation.Block;
+
+/**
+ * Natural loops of a method. An edge is a back edge when its target dominates its
+ * source, the loop of a header is the header and every block that reaches a back edge
+ * to it without passing the header. Loops with the same header are merged.
+ *
+ */
+public class Loops {
+	private Method method;
+	private LinkedHashMap<Block, Set<Block>> bodies;
+	private HashMap<Block, Integer> depths;
+
+	public Loops(Method method) {
+		this.method = method;
+		this.bodies = new LinkedHashMap<Block, Set<Block>>();
+		this.depths = new HashMap<Block, Integer>();
+	}
+
+	public void build(DominatorTree tree) {
+		for(Block block : tree.getReversePostorder()) {
+			for(Block successor : block.getSubsequentBlocks()) {
+				if(successor == block || tree.isDominator(successor, block)) {
+					addBackEdge(tree, block, successor);
+				}
+			}
+		}
+		for(Set<Block> body : bodies.values()) {
+			for(Block block : body) {
+				Integer depth = depths.get(block);
+				depths.put(block, depth == null ? 1 : depth + 1);
+			}
+		}
+	}
+
+	private void addBackEdge(DominatorTree tree, Block source, Block header) {
+		Set<Block> body = bodies.get(header);
+		if(body == null) {
+			body = new LinkedHashSet<Block>();
+			body.add(header);
+			bodies.put(header, body);
+		}
+		List<Block> worklist = new ArrayList<Block>();
+		if(body.add(source)) {
+			worklist.add(source);
+		}
+		while(!worklist.isEmpty()) {
+			Block block = worklist.remove(worklist.size() - 1);
+			for(Block precedent : block.getPrecedentBlocks()) {
+				if(tree.isReachable(precedent) && body.add(precedent)) {
+					worklist.add(precedent);
+				}
+			}
+		}
+	}
+
+	public Method getMethod() {
+		return method;
+	}
+
+	public Set<Block> getHeaders() {
+		return bodies.keySet();
+	}
+
+	public boolean isHeader(Block block) {
+		return bodies.containsKey(block);
+	}
+
+	/**
+	 * @return blocks of the loop with the header, the header first
+	 */
+	public Set<Block> getBody(Block header) {
+		return bodies.get(header);
+	}
+
+	/**
+	 * @return number of loops the block is in, 0 outside of any loop
+	 */
+	public int getDepth(Block block) {
+		Integer depth = depths.get(block);
+		return depth == null ? 0 : depth;
+	}
+}
@@ -1,14 +1,18 @@
 package edu.uci.eecs.compiler.model;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 import java.util.Queue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import edu.uci.eecs.compiler.representation.Block;
 import edu.uci.eecs.compiler.representation.SymbolTable;
+import edu.uci.eecs.compiler.representation.SymbolTable.TableRecord;
 import edu.uci.eecs.compiler.util.Constant;
+import edu.uci.eecs.compiler.util.SymbolType;
 
 public class Method {
 	private String name;
@@ -19,15 +23,19 @@ public class Method {
 	private SymbolTable symbolTable;
 	private List<Block> blocks;
 	private DominatorTree dominatorTree;
+	private CompilationContext context;
+	private int phiNumber;
+	private int suppressedPhiNumber;
 	
 	//It is for building inference graph at register allocation stage.
 	private List<Block> reverseOrderBlocks;
 	
-	public Method(String name, boolean isFunction) {
+	public Method(String name, boolean isFunction, CompilationContext context) {
 		this.name = name;
 		this.isFucntion = isFunction;
+		this.context = context;
 		this.inferenceGraph = new InferenceGraph();
-		this.symbolTable = new SymbolTable();
+		this.symbolTable = new SymbolTable(context.getInterner());
 		this.blocks = new ArrayList<Block>();
 		this.reverseOrderBlocks = new ArrayList<Block>();
 	}
@@ -37,15 +45,23 @@ public class Method {
 		return this.name;
 	}
 	
-	public List<Integer> getDimension(String name) {
-		return this.symbolTable.getDimension(name);
+	public CompilationContext getContext() {
+		return this.context;
 	}
 	
-	public void addSymbol(String name, int lineNumber, ArrayList<Integer> dimentions) {
+	public void setContext(CompilationContext context) {
+		this.context = context;
+	}
+	
+	public List<Integer> getDimension(int id) {
+		return this.symbolTable.getDimension(id);
+	}
+	
+	public void addSymbol(int id, int lineNumber, ArrayList<Integer> dimentions) {
 		if(dimentions != null) {
-			this.symbolTable.insertArray(name, lineNumber, dimentions);
+			this.symbolTable.insertArray(id, lineNumber, dimentions);
 		} else {
-			this.symbolTable.insertVariable(name, lineNumber);
+			this.symbolTable.insertVariable(id, lineNumber);
 		}
 	}
 	
@@ -55,64 +71,83 @@ public class Method {
 		return maxInstructionId;
 	}
 	
+	/**
+	 * The tree is built on demand and dropped whenever blocks or edges change.
+	 */
 	public DominatorTree getDominatorTree() {
 		if (dominatorTree == null) {
-			return this.dominatorTree;
-		} else {
 			return buildDominatorTree();
+		} else {
+			return this.dominatorTree;
 		}
 	}
 	
 	public DominatorTree buildDominatorTree() {
 		this.dominatorTree = new DominatorTree(this);
-		if (this.dominatorTree == null) {
-			for (int i = 0; i < blocks.size(); i++) {
-				Block block = blocks.get(i);
-				if (block.getDominator() != null) {
-					dominatorTree.addDominatePair(block.getDominator(), block);
-				}
-			}
-		}
-		
+		this.dominatorTree.build();
 		return this.dominatorTree;
 	}
 	
+	public void invalidateDominatorTree() {
+		this.dominatorTree = null;
+	}
+	
 	public String toGraph() {
+		StringWriter writer = new StringWriter();
+		try {
+			toGraph(writer);
+		} catch (IOException e) {
+			//a StringWriter doesn't throw
+		}
+		return writer.toString();
+	}
+	
+	public void toGraph(Writer writer) throws IOException {
 		
 		//create clusters
-		String methodContent = "digraph " + name + " {" + Constant.LINE_SEPARATER;
+		writer.write("digraph " + name + " {" + Constant.LINE_SEPARATER);
 		for(Block block: blocks) {
-			methodContent += block.toGraph() + Constant.LINE_SEPARATER;
+			block.toGraph(writer);
+			writer.write(Constant.LINE_SEPARATER);
 		}
 		
 		
 		//create links
 		for(Block block:blocks) {
 			for(Block successor: block.getSubsequentBlocks()) {
-				methodContent += "\"end" + block.getId() +"\" -> \"start" + successor.getId()
+				writer.write("\"end" + block.getId() +"\" -> \"start" + successor.getId()
 						+ "\" [ltail=cluster" + block.getId() + " lhead=cluster"
-						+ successor.getId() +"];" + Constant.LINE_SEPARATER;
+						+ successor.getId() +"];" + Constant.LINE_SEPARATER);
 			}
 		}
 		
-		methodContent += "}" + Constant.LINE_SEPARATER;
-		return methodContent;
+		writer.write("}" + Constant.LINE_SEPARATER);
+	}
+	
+	public boolean hasSymbol(int id) {
+		return this.symbolTable.isDeclared(id);
 	}
 	
-	public boolean hasSymbol(String name) {
-		return this.symbolTable.isDeclared(name);
+	public TableRecord getSymbol(int id) {
+		return this.symbolTable.getRecord(id);
 	}
 	
-	public Set<String> getSymbols() {
-		return this.symbolTable.getSymbols();
+	public SymbolType getSymbolType(int id) {
+		return this.symbolTable.isDeclared(id) ? this.symbolTable.getType(id) : null;
+	}
+	
+	public int[] getSymbolIds() {
+		return this.symbolTable.getSymbolIds();
 	}
 	
 	public void addBlock(Block block) {
 		blocks.add(block);
+		invalidateDominatorTree();
 	}
 	
 	public void removeBlock(Block block) {
 		blocks.remove(block);
+		invalidateDominatorTree();
 	}
 	
 	public List<Block> getBlocks() {
@@ -123,6 +158,10 @@ public class Method {
 	public void setBeginBlock(Block beginBlock) {
 		this.beginBlock = beginBlock;
 	}
+	
+	public Block getBeginBlock() {
+		return this.beginBlock;
+	}
 
 
 	public void setExitBlock(Block exitBlock) {
@@ -136,4 +175,18 @@ public class Method {
 	public boolean isFunction() {
 		return this.isFucntion;
 	}
+	
+	public void setPhiStatistics(int phiNumber, int suppressedPhiNumber) {
+		this.phiNumber = phiNumber;
+		this.suppressedPhiNumber = suppressedPhiNumber;
+	}
+	
+	public int getPhiNumber() {
+		return this.phiNumber;
+	}
+	
+	//phis of minimal SSA that pruned SSA left out because the variable was dead
+	public int getSuppressedPhiNumber() {
+		return this.suppressedPhiNumber;
+	}
 }
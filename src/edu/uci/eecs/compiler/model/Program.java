@@ -1,23 +1,38 @@
 package edu.uci.eecs.compiler.model;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
-import java.util.Set;
 
 import edu.uci.eecs.compiler.model.Method;
 import edu.uci.eecs.compiler.representation.SymbolTable;
+import edu.uci.eecs.compiler.representation.SymbolTable.TableRecord;
 import edu.uci.eecs.compiler.util.Constant;
+import edu.uci.eecs.compiler.util.Interner;
+import edu.uci.eecs.compiler.util.SymbolType;
 
 public class Program {
 	
 	private HashMap<String, Method> methods;
 	private SymbolTable table;
+	private CompilationContext context;
 	
-	public Program() {
+	public Program(CompilationContext context) {
+		this.context = context;
 		methods = new HashMap<String, Method>();
-		table = new SymbolTable();
+		table = new SymbolTable(context.getInterner());
+	}
+	
+	public CompilationContext getContext() {
+		return context;
+	}
+	
+	public Interner getInterner() {
+		return context.getInterner();
 	}
 	
 	public Collection<Method> getMethods() {
@@ -28,33 +43,49 @@ public class Program {
 		methods.put(method.getName(), method);
 	}
 	
-	public void addSymbol(String name, Integer lineNumber, List<Integer> dimentions) {
+	public void addSymbol(int id, Integer lineNumber, List<Integer> dimentions) {
 		if(dimentions == null) {
-			this.table.insertVariable(name, lineNumber);
+			this.table.insertVariable(id, lineNumber);
 		} else {
-			this.table.insertArray(name, lineNumber, dimentions);
+			this.table.insertArray(id, lineNumber, dimentions);
 		}
 	}
 	
-	public Set<String> getSymbols() {
-		return table.getSymbols();
+	public int[] getSymbolIds() {
+		return table.getSymbolIds();
+	}
+	
+	public boolean hasVariable(int id) {
+		return this.table.isDeclared(id);
 	}
 	
-	public boolean hasVariable(String name) {
-		return this.table.isDeclared(name);
+	public TableRecord getSymbol(int id) {
+		return this.table.getRecord(id);
 	}
 	
-	public List<Integer> getDimention(String name) {
-		return this.table.getDimension(name);
+	public SymbolType getType(int id) {
+		return this.table.getType(id);
+	}
+	
+	public List<Integer> getDimention(int id) {
+		return this.table.getDimension(id);
 	}
 
 	public String toGraph() {
-		String content = "";
+		StringWriter writer = new StringWriter();
+		try {
+			toGraph(writer);
+		} catch (IOException e) {
+			//a StringWriter doesn't throw
+		}
+		return writer.toString();
+	}
+	
+	public void toGraph(Writer writer) throws IOException {
 		for(Entry<String, Method> entry: methods.entrySet()) {
-			content += entry.getValue().toGraph() + Constant.LINE_SEPARATER;
+			entry.getValue().toGraph(writer);
+			writer.write(Constant.LINE_SEPARATER);
 		}
-		
-		return content;
 	}
 
 }
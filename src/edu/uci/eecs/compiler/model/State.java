@@ -1,7 +1,8 @@
 package edu.uci.eecs.compiler.model;
 
-import java.util.HashMap;
-import java.util.Map.Entry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 import edu.uci.eecs.compiler.representation.SSAInstruction;
 
@@ -13,45 +14,134 @@ import edu.uci.eecs.compiler.representation.SSAInstruction;
  * Since DLX don't have hierarchical class definition, I don't distinguish local variables
  * with the field and parameters here. 
  * 
+ * The variables are kept in a persistent 32-way trie indexed by the identifier id, so
+ * a snapshot is O(1) and shares all the nodes with the original. Nodes are owned by the
+ * state that created them and are changed in place; after a snapshot neither side owns
+ * the shared nodes any more, so they are copied on the first write.
+ * 
  * @author Peter
  *
  */
 public class State {
 	
-	private HashMap<String, SSAInstruction> variables;
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+	
+	private static class Node {
+		private final Object owner;
+		private final Object[] slots;
+		
+		private Node(Object owner, Object[] slots) {
+			this.owner = owner;
+			this.slots = slots;
+		}
+	}
+	
+	private Node root;
+	private int shift;     //the root covers the ids below 1 << (shift + BITS)
+	private Object owner;  //edit token, nodes with the same owner can be changed in place
 	
 	public State() {
-		variables = new HashMap<String, SSAInstruction>();
+		this.owner = new Object();
+		this.root = new Node(owner, new Object[WIDTH]);
+		this.shift = 0;
 	}
 	
-	public SSAInstruction getVariable(String name) {
-		return variables.get(name);
+	private State(Node root, int shift) {
+		this.owner = new Object();
+		this.root = root;
+		this.shift = shift;
 	}
 	
-	public void addVariable(String name) {
-		variables.put(name, null);
+	/**
+	 * Add the nodes of the trie to the set, nodes shared with other states are
+	 * counted once over all of them.
+	 * @return number of nodes that were not in the set
+	 */
+	public int addNodes(Set<Object> nodes) {
+		int added = 0;
+		List<Node> stack = new ArrayList<Node>();
+		stack.add(root);
+		while(!stack.isEmpty()) {
+			Node node = stack.remove(stack.size() - 1);
+			if(!nodes.add(node)) {
+				continue;
+			}
+			added++;
+			for(Object slot : node.slots) {
+				if(slot instanceof Node) {
+					stack.add((Node)slot);
+				}
+			}
+		}
+		return added;
 	}
 	
-	public void addVariable(String name, SSAInstruction instruction) {
-		variables.put(name, instruction);
+	public SSAInstruction getVariable(int id) {
+		if((id >>> shift) >= WIDTH) {
+			return null;
+		}
+		
+		Node node = root;
+		for(int level = shift; level > 0; level -= BITS) {
+			node = (Node)node.slots[(id >>> level) & MASK];
+			if(node == null) {
+				return null;
+			}
+		}
+		return (SSAInstruction)node.slots[id & MASK];
 	}
 	
-	public void setVariable(String name, SSAInstruction instruction) {
-		variables.put(name, instruction);
+	public void addVariable(int id) {
+		setVariable(id, null);
 	}
 	
-	public void deleteVariable(String name) {
-		variables.remove(name);
+	public void addVariable(int id, SSAInstruction instruction) {
+		setVariable(id, instruction);
 	}
 	
-	//It is used for store and restore variable in different scope
-	public State deepCopy() {
-		
-		State state = new State();
-		for(Entry<String, SSAInstruction> entry: variables.entrySet()) {
-			state.addVariable(entry.getKey(), entry.getValue());
+	public void setVariable(int id, SSAInstruction instruction) {
+		while((id >>> shift) >= WIDTH) {
+			Object[] slots = new Object[WIDTH];
+			slots[0] = root;
+			root = new Node(owner, slots);
+			shift += BITS;
 		}
 		
+		root = editable(root);
+		Node node = root;
+		for(int level = shift; level > 0; level -= BITS) {
+			int index = (id >>> level) & MASK;
+			Node child = (Node)node.slots[index];
+			child = child == null ? new Node(owner, new Object[WIDTH]) : editable(child);
+			node.slots[index] = child;
+			node = child;
+		}
+		node.slots[id & MASK] = instruction;
+	}
+	
+	public void deleteVariable(int id) {
+		if(getVariable(id) != null) {
+			setVariable(id, null);
+		}
+	}
+	
+	private Node editable(Node node) {
+		if(node.owner == owner) {
+			return node;
+		}
+		return new Node(owner, node.slots.clone());
+	}
+	
+	/**
+	 * It is used for store and restore variable in different scope.
+	 * O(1), the copy shares the trie with this state.
+	 */
+	public State snapshot() {
+		State state = new State(root, shift);
+		//give up the ownership, the shared nodes are copied before they are changed
+		this.owner = new Object();
 		return state;
 	}
 	
@@ -31,13 +31,16 @@ public class UsageList {
 	
 	/**
 	 * Notify all the instructions that use the original instruction as parameter
-	 * to replace it with new instruction
+	 * to replace it with new instruction, the usages move to the new instruction.
 	 * @param newInstruction
 	 */
 	public void notifyUsages(SSAInstruction newInstruction) {
-		this.originalInstruction = newInstruction;
+		this.newInstruction = newInstruction;
 		for(int i= 0; i < usedInstructions.size(); i++) {
-			usedInstructions.get(i).replaceUsage(originalInstruction, newInstruction);
+			SSAInstruction usage = usedInstructions.get(i);
+			usage.replaceUsage(originalInstruction, newInstruction);
+			newInstruction.addUsage(usage);
 		}
+		usedInstructions.clear();
 	}
 }
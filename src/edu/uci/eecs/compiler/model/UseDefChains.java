@@ -0,0 +1,76 @@
+package edu.uci.eecs.compiler.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import edu.uci.eecs.compiler.representation.Block;
+import edu.uci.eecs.compiler.representation.SSAInstruction;
+
+/**
+ * Users of every value of a method, collected from the operands of the instructions
+ * in its blocks. In SSA form the definition of a use is the operand itself, so only
+ * the other direction has to be stored. Unlike the UsageList of an instruction the
+ * chains only see instructions that are still in a block.
+ *
+ */
+public class UseDefChains {
+	private Method method;
+	private HashMap<SSAInstruction, List<SSAInstruction>> users;
+
+	public UseDefChains(Method method) {
+		this.method = method;
+		this.users = new HashMap<SSAInstruction, List<SSAInstruction>>();
+	}
+
+	public void build() {
+		for(Block block : method.getBlocks()) {
+			for(SSAInstruction instruction : block.getInstructions()) {
+				for(SSAInstruction operand : instruction.getOperands()) {
+					List<SSAInstruction> list = users.get(operand);
+					if(list == null) {
+						list = new ArrayList<SSAInstruction>();
+						users.put(operand, list);
+					}
+					list.add(instruction);
+				}
+			}
+		}
+	}
+
+	public Method getMethod() {
+		return method;
+	}
+
+	public List<SSAInstruction> getUsers(SSAInstruction value) {
+		List<SSAInstruction> list = users.get(value);
+		return list != null ? list : Collections.<SSAInstruction>emptyList();
+	}
+
+	public boolean isUsed(SSAInstruction value) {
+		return users.containsKey(value);
+	}
+
+	/**
+	 * Let every user of the value use the replacement instead, the chains and the
+	 * usage lists follow.
+	 */
+	public void replaceUses(SSAInstruction value, SSAInstruction replacement) {
+		List<SSAInstruction> list = users.remove(value);
+		if(list == null) {
+			return;
+		}
+		for(SSAInstruction user : list) {
+			user.replaceUsage(value, replacement);
+			value.removeUsage(user);
+			replacement.addUsage(user);
+		}
+		List<SSAInstruction> replacementUsers = users.get(replacement);
+		if(replacementUsers == null) {
+			users.put(replacement, list);
+		} else {
+			replacementUsers.addAll(list);
+		}
+	}
+}
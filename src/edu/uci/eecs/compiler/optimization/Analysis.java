@@ -0,0 +1,64 @@
+package edu.uci.eecs.compiler.optimization;
+
+import edu.uci.eecs.compiler.model.DominatorTree;
+import edu.uci.eecs.compiler.model.Liveness;
+import edu.uci.eecs.compiler.model.Loops;
+import edu.uci.eecs.compiler.model.Method;
+import edu.uci.eecs.compiler.model.UseDefChains;
+
+/**
+ * An analysis of one method. The result is computed by the AnalysisManager on the
+ * first request and kept until a pass that doesn't preserve the analysis changes
+ * the method. An analysis may ask the manager for the analyses it is built on.
+ *
+ * @param <T> type of the result
+ */
+public abstract class Analysis<T> {
+
+	public static final Analysis<DominatorTree> DOMINATORS = new Analysis<DominatorTree>("dominators") {
+		public DominatorTree compute(Method method, AnalysisManager analyses) {
+			return method.getDominatorTree();
+		}
+	};
+
+	public static final Analysis<Liveness> LIVENESS = new Analysis<Liveness>("liveness") {
+		public Liveness compute(Method method, AnalysisManager analyses) {
+			Liveness liveness = new Liveness(method);
+			liveness.build(analyses.get(DOMINATORS, method));
+			return liveness;
+		}
+	};
+
+	public static final Analysis<Loops> LOOPS = new Analysis<Loops>("loops") {
+		public Loops compute(Method method, AnalysisManager analyses) {
+			Loops loops = new Loops(method);
+			loops.build(analyses.get(DOMINATORS, method));
+			return loops;
+		}
+	};
+
+	public static final Analysis<UseDefChains> USE_DEF = new Analysis<UseDefChains>("use-def") {
+		public UseDefChains compute(Method method, AnalysisManager analyses) {
+			UseDefChains chains = new UseDefChains(method);
+			chains.build();
+			return chains;
+		}
+	};
+
+	private String name;
+
+	protected Analysis(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public abstract T compute(Method method, AnalysisManager analyses);
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,83 @@
+package edu.uci.eecs.compiler.optimization;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Set;
+
+import edu.uci.eecs.compiler.model.Method;
+
+/**
+ * Cache of the analysis results per method. A result stays valid until it is
+ * invalidated, the PassManager invalidates every analysis a pass doesn't preserve
+ * after the pass changed the method.
+ *
+ */
+public class AnalysisManager {
+
+	private HashMap<Method, HashMap<Analysis<?>, Object>> results;
+	private int computed;
+	private int reused;
+
+	public AnalysisManager() {
+		this.results = new HashMap<Method, HashMap<Analysis<?>, Object>>();
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T get(Analysis<T> analysis, Method method) {
+		HashMap<Analysis<?>, Object> cached = results.get(method);
+		if(cached == null) {
+			cached = new HashMap<Analysis<?>, Object>();
+			results.put(method, cached);
+		}
+		T result = (T)cached.get(analysis);
+		if(result != null) {
+			reused++;
+			return result;
+		}
+		result = analysis.compute(method, this);
+		cached.put(analysis, result);
+		computed++;
+		return result;
+	}
+
+	public boolean isCached(Analysis<?> analysis, Method method) {
+		HashMap<Analysis<?>, Object> cached = results.get(method);
+		return cached != null && cached.containsKey(analysis);
+	}
+
+	/**
+	 * Drop the results of the method that are not preserved.
+	 */
+	public void invalidate(Method method, Set<Analysis<?>> preserved) {
+		HashMap<Analysis<?>, Object> cached = results.get(method);
+		if(cached == null) {
+			return;
+		}
+		Iterator<Analysis<?>> analyses = cached.keySet().iterator();
+		while(analyses.hasNext()) {
+			Analysis<?> analysis = analyses.next();
+			if(!preserved.contains(analysis)) {
+				analyses.remove();
+				if(analysis == Analysis.DOMINATORS) {
+					//the tree is also kept by the method and set on the blocks
+					method.invalidateDominatorTree();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drop all results of the method, it won't be changed or analyzed again.
+	 */
+	public void release(Method method) {
+		results.remove(method);
+	}
+
+	public int getComputed() {
+		return computed;
+	}
+
+	public int getReused() {
+		return reused;
+	}
+}
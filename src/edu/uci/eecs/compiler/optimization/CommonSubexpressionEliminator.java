@@ -1,25 +1,177 @@
 package edu.uci.eecs.compiler.optimization;
 
-import edu.uci.eecs.compiler.model.Program;
+import edu.uci.eecs.compiler.model.DominatorTree;
+import edu.uci.eecs.compiler.model.Method;
+import edu.uci.eecs.compiler.representation.Block;
+import edu.uci.eecs.compiler.representation.SSAInstruction;
 import edu.uci.eecs.compiler.representation.SSAInstruction.*;
 import edu.uci.eecs.compiler.util.ComparsionOperatorType;
 import edu.uci.eecs.compiler.util.ComputationOperatorType;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.ArrayList;
+import java.util.Set;
+
+/**
+ * Global value numbering over the dominator tree. The blocks are walked in preorder
+ * of the tree with a table of the values computed so far, the entries of a block are
+ * dropped when the walk leaves it, so the table only holds values of the dominators.
+ * An instruction whose value is in the table is replaced by the instruction already
+ * computing it.
+ *
+ * The key of a value is its operator and the value numbers of its operands, a constant
+ * is numbered by its value and any other operand by itself, since the operands of a
+ * replaced instruction move to the one that stays. Numbered are the computations, the
+ * conditions, the index computations, the base addresses of the arrays, the placed
+ * constants and the loads of variables the method never stores, if it calls nothing.
+ *
+ */
+public class CommonSubexpressionEliminator implements Pass {
+
+	public String getName() {
+		return "cse";
+	}
+
+	//only instructions are removed, no blocks or edges
+	public Set<Analysis<?>> getPreservedAnalyses() {
+		return PassManager.preserve(Analysis.DOMINATORS, Analysis.LOOPS);
+	}
+
+	public boolean run(Method method, AnalysisManager analyses) {
+		DominatorTree tree = analyses.get(Analysis.DOMINATORS, method);
+		return new Numbering(method).number(tree);
+	}
+
+	/**
+	 * Value table of the method being numbered, the pass keeps nothing between runs.
+	 */
+	private static class Numbering {
+		private Method method;
+		private HashMap<List<Object>, SSAInstruction> values;
+		private List<List<Object>> scope;
+		private Set<Integer> storedVariables;
+		private boolean calls;
+
+		private Numbering(Method method) {
+			this.method = method;
+			this.values = new HashMap<List<Object>, SSAInstruction>();
+			this.scope = new ArrayList<List<Object>>();
+			this.storedVariables = new HashSet<Integer>();
+			for(Block block : method.getBlocks()) {
+				for(SSAInstruction instruction : block.getInstructions()) {
+					if(instruction instanceof StoreVariableSSAInstruction) {
+						storedVariables.add(((StoreVariableSSAInstruction)instruction).getVariableId());
+					} else if(instruction instanceof CallSSAInstruction) {
+						calls = true;
+					}
+				}
+			}
+		}
+
+		private boolean number(DominatorTree tree) {
+			boolean changed = false;
+			//a block is entered with mark -1 and left with the size of the scope at its entry
+			List<Block> blocks = new ArrayList<Block>();
+			List<Integer> marks = new ArrayList<Integer>();
+			blocks.add(method.getBeginBlock());
+			marks.add(-1);
+			while(!blocks.isEmpty()) {
+				int last = blocks.size() - 1;
+				Block block = blocks.get(last);
+				int mark = marks.get(last);
+				if(mark < 0) {
+					marks.set(last, scope.size());
+					changed |= numberBlock(block);
+					List<Block> children = tree.getChildren(block);
+					for(int i = children.size() - 1; i >= 0; i--) {
+						blocks.add(children.get(i));
+						marks.add(-1);
+					}
+				} else {
+					blocks.remove(last);
+					marks.remove(last);
+					while(scope.size() > mark) {
+						values.remove(scope.remove(scope.size() - 1));
+					}
+				}
+			}
+			return changed;
+		}
+
+		private boolean numberBlock(Block block) {
+			boolean changed = false;
+			for(SSAInstruction instruction : new ArrayList<SSAInstruction>(block.getInstructions())) {
+				List<Object> key = getKey(instruction);
+				if(key == null) {
+					continue;
+				}
+				SSAInstruction value = values.get(key);
+				if(value == null && isCommutative(instruction)) {
+					value = values.get(Arrays.asList(key.get(0), key.get(2), key.get(1)));
+				}
+				if(value == null) {
+					values.put(key, instruction);
+					scope.add(key);
+				} else {
+					instruction.replace(value);
+					for(SSAInstruction operand : instruction.getOperands()) {
+						operand.removeUsage(instruction);
+					}
+					changed = true;
+				}
+			}
+			return changed;
+		}
+
+		/**
+		 * @return operator and value numbers of the operands, null for a value that is not numbered
+		 */
+		private List<Object> getKey(SSAInstruction instruction) {
+			if(instruction instanceof ComputationSSAInstruction) {
+				ComputationSSAInstruction computation = (ComputationSSAInstruction)instruction;
+				return Arrays.asList(computation.getType(), getNumber(computation.getLeftOperand()),
+						getNumber(computation.getRightOperand()));
+			} else if(instruction instanceof ConditionSSAInstruction) {
+				ConditionSSAInstruction condition = (ConditionSSAInstruction)instruction;
+				return Arrays.asList(condition.getType(), getNumber(condition.getLeftOperand()),
+						getNumber(condition.getRightOperand()));
+			} else if(instruction instanceof IndexSSAInstruction) {
+				IndexSSAInstruction index = (IndexSSAInstruction)instruction;
+				return Arrays.asList("index", getNumber(index.getReference()), getNumber(index.getExpression()),
+						index.getMultipler());
+			} else if(instruction instanceof LoadArraySSAInstruction) {
+				return Arrays.<Object>asList("array", ((LoadArraySSAInstruction)instruction).getName());
+			} else if(instruction instanceof ConstantSSAInstruction) {
+				return Arrays.<Object>asList("constant", ((ConstantSSAInstruction)instruction).getValue());
+			} else if(instruction instanceof LoadVariableSSAInstruction) {
+				int variableId = ((LoadVariableSSAInstruction)instruction).getVariableId();
+				if(!calls && !storedVariables.contains(variableId)) {
+					return Arrays.<Object>asList("variable", variableId);
+				}
+			}
+			return null;
+		}
+	}
 
-public class CommonSubexpressionEliminator implements Optimizer {
-	private Program program;
-	private HashMap<ComparsionOperatorType, List<ConditionSSAInstruction>> conditionMap;
-	private HashMap<ComputationOperatorType, List<ComputationOperatorType>> computationMap;
-	
-	public CommonSubexpressionEliminator(Program program) {
-		this.program = program;
+	private static Object getNumber(SSAInstruction operand) {
+		if(operand instanceof ConstantSSAInstruction) {
+			return ((ConstantSSAInstruction)operand).getValue();
+		}
+		return operand;
 	}
 
-	public void optimize() {
-		
+	private static boolean isCommutative(SSAInstruction instruction) {
+		if(instruction instanceof ComputationSSAInstruction) {
+			ComputationOperatorType type = ((ComputationSSAInstruction)instruction).getType();
+			return type == ComputationOperatorType.ADD || type == ComputationOperatorType.TIMES;
+		} else if(instruction instanceof ConditionSSAInstruction) {
+			ComparsionOperatorType type = ((ConditionSSAInstruction)instruction).getType();
+			return type == ComparsionOperatorType.EQUAL || type == ComparsionOperatorType.NEQUAL;
+		}
+		return false;
 	}
 
 	/**
@@ -1,115 +1,349 @@
 package edu.uci.eecs.compiler.optimization;
 
-import edu.uci.eecs.compiler.model.Program;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.uci.eecs.compiler.model.CompilationContext;
 import edu.uci.eecs.compiler.model.Method;
+import edu.uci.eecs.compiler.model.UseDefChains;
 import edu.uci.eecs.compiler.representation.Block;
+import edu.uci.eecs.compiler.representation.Block.JoinBlock;
 import edu.uci.eecs.compiler.representation.SSAInstruction;
 import edu.uci.eecs.compiler.representation.SSAInstruction.*;
 
 /**
- * 1 Propagate the constant instructions
- * 2 Evaluate the Conditional Branch if the condition is predefined.
- *   change to unconditional branch, if it is possible. 
- * 
+ * Sparse conditional constant propagation. Every value starts unknown and is lowered
+ * to a constant or to overdefined, a value of a block is only evaluated once an edge
+ * into the block is known to be executed, and a phi only meets the operands of its
+ * executed edges. A worklist of edges and one of values run to a fixed point, so a
+ * single run sees through phis and loops.
+ *
+ * Afterwards the constant computations, conditions and phis are replaced by constants
+ * and the conditional branches with a constant condition by unconditional branches.
+ * The edges not taken are removed, the blocks that are left without a path from the
+ * entry are removed by the UnreachableCodeEliminator.
+ *
  * @author Peter
  *
  */
-public class ConstantEvaluator implements Optimizer {
-	
-	private Program program;
-	
-	public ConstantEvaluator(Program program) {
-		this.program = program;
+public class ConstantEvaluator implements Pass {
+
+	public String getName() {
+		return "constant";
 	}
-	
-	public void optimize() {
-		for(Method method: program.getMethods()) {
-			for(Block block:method.getBlocks()) {
-				for(SSAInstruction instruction: block.getInstructions()) {
-					if(instruction instanceof BinarySSAInstruction) {
-						if(instruction instanceof ComputationSSAInstruction) {
-							ComputationSSAInstruction cmp = (ComputationSSAInstruction)instruction;
-							if(cmp.getLeftOperand() instanceof ConstantSSAInstruction &&
-									cmp.getRightOperand() instanceof ConstantSSAInstruction) {
-								int result = 0;
-								int leftValue = ((ConstantSSAInstruction)cmp.getLeftOperand()).getValue();
-								int rightValue = ((ConstantSSAInstruction)cmp.getRightOperand()).getValue();
-								switch (cmp.getType()) {
-									case ADD:
-										result = leftValue + rightValue;
-										break;
-									case MINUS:
-										result = leftValue - rightValue;
-										break;
-									case TIMES:
-										result = leftValue * rightValue;
-										break;
-									case DIVIDE:
-										result = leftValue / rightValue;
-									default:
-										throw new RuntimeException("Unexpected Binary Computation Operator Type!");
-								}
-								cmp.replace(new ConstantSSAInstruction(null, result));
-								
-							}
-							
-
-						} else if(instruction instanceof ConditionSSAInstruction) {
-							ConditionSSAInstruction condition = (ConditionSSAInstruction)instruction;
-							if(condition.getLeftOperand() instanceof ConstantSSAInstruction &&
-									condition.getRightOperand() instanceof ConstantSSAInstruction) {
-								int result = 0;
-								int leftValue = ((ConstantSSAInstruction)condition.getLeftOperand()).getValue();
-								int rightValue = ((ConstantSSAInstruction)condition.getRightOperand()).getValue();
-								switch (condition.getType()) {
-									case EQUAL:
-										result = leftValue == rightValue ? 1 : 0;
-										break;
-									case NEQUAL:
-										result = leftValue == rightValue ? 0 : 1;
-										break;
-									case LESS:
-										result = leftValue < rightValue ? 1 : 0;
-										break;
-									case LARGER:
-										result = leftValue > rightValue ? 1 : 0;
-										break;
-									case LEQ:
-										result = leftValue <= rightValue ? 1 : 0;
-										break;
-									case GEQ:
-										result = leftValue >= rightValue ? 1 : 0;
-										break;
-									default:
-										throw new RuntimeException("Unexpected Binary Computation Operator Type!");
-								}
-								condition.replace(new ConstantSSAInstruction(null, result));
-							}
+
+	//branches may be folded, the control flow graph changes
+	public Set<Analysis<?>> getPreservedAnalyses() {
+		return PassManager.preserve();
+	}
+
+	/**
+	 * Lattice value of an instruction, unknown above every constant and overdefined below.
+	 */
+	private static class Value {
+		private static final Value UNKNOWN = new Value(0);
+		private static final Value OVERDEFINED = new Value(0);
+
+		private int constant;
+
+		private Value(int constant) {
+			this.constant = constant;
+		}
+
+		private boolean isConstant() {
+			return this != UNKNOWN && this != OVERDEFINED;
+		}
+
+		private Value meet(Value value) {
+			if(this == UNKNOWN) {
+				return value;
+			} else if(value == UNKNOWN) {
+				return this;
+			} else if(this == OVERDEFINED || value == OVERDEFINED || constant != value.constant) {
+				return OVERDEFINED;
+			}
+			return this;
+		}
+	}
+
+	public boolean run(Method method, AnalysisManager analyses) {
+		Propagation propagation = new Propagation(method, analyses.get(Analysis.USE_DEF, method));
+		propagation.propagate();
+		return propagation.rewrite();
+	}
+
+	/**
+	 * State of one run, so one instance of the pass can run on several methods at a time.
+	 */
+	private static class Propagation {
+		private Method method;
+		private UseDefChains chains;
+		private HashMap<SSAInstruction, Value> values;
+		private HashSet<Block> executableBlocks;
+		private HashMap<Block, Set<Block>> executableEdges;
+		private List<Block[]> edgeWorklist;
+		private List<SSAInstruction> valueWorklist;
+
+		private Propagation(Method method, UseDefChains chains) {
+			this.method = method;
+			this.chains = chains;
+			this.values = new HashMap<SSAInstruction, Value>();
+			this.executableBlocks = new HashSet<Block>();
+			this.executableEdges = new HashMap<Block, Set<Block>>();
+			this.edgeWorklist = new ArrayList<Block[]>();
+			this.valueWorklist = new ArrayList<SSAInstruction>();
+		}
+
+		private void propagate() {
+			for(Block block : method.getBlocks()) {
+				for(SSAInstruction instruction : block.getInstructions()) {
+					values.put(instruction, Value.UNKNOWN);
+				}
+			}
+			edgeWorklist.add(new Block[] {null, method.getBeginBlock()});
+			while(!edgeWorklist.isEmpty() || !valueWorklist.isEmpty()) {
+				while(!edgeWorklist.isEmpty()) {
+					Block[] edge = edgeWorklist.remove(edgeWorklist.size() - 1);
+					visitEdge(edge[0], edge[1]);
+				}
+				while(!valueWorklist.isEmpty()) {
+					SSAInstruction instruction = valueWorklist.remove(valueWorklist.size() - 1);
+					for(SSAInstruction user : chains.getUsers(instruction)) {
+						if(executableBlocks.contains(user.getBlock())) {
+							visit(user);
+						}
+					}
+				}
+			}
+		}
+
+		private void visitEdge(Block precedent, Block block) {
+			if(precedent != null) {
+				Set<Block> successors = executableEdges.get(precedent);
+				if(successors == null) {
+					successors = new HashSet<Block>();
+					executableEdges.put(precedent, successors);
+				}
+				if(!successors.add(block)) {
+					return;
+				}
+			}
+			if(executableBlocks.add(block)) {
+				boolean branch = false;
+				for(SSAInstruction instruction : block.getInstructions()) {
+					visit(instruction);
+					branch |= instruction instanceof ConditionalBranchSSAInstruction;
+				}
+				if(!branch) {
+					for(Block successor : block.getSubsequentBlocks()) {
+						edgeWorklist.add(new Block[] {block, successor});
+					}
+				}
+			} else {
+				//only the phis see the new edge
+				for(SSAInstruction instruction : block.getInstructions()) {
+					if(instruction instanceof PhiSSAInstruction) {
+						visit(instruction);
+					}
+				}
+			}
+		}
+
+		private void visit(SSAInstruction instruction) {
+			if(instruction instanceof ConditionalBranchSSAInstruction) {
+				visitBranch((ConditionalBranchSSAInstruction)instruction);
+			} else if(instruction instanceof PhiSSAInstruction) {
+				PhiSSAInstruction phi = (PhiSSAInstruction)instruction;
+				Value value = Value.UNKNOWN;
+				for(Block precedent : phi.getBlock().getPrecedentBlocks()) {
+					Set<Block> successors = executableEdges.get(precedent);
+					if(successors != null && successors.contains(phi.getBlock())) {
+						//a phi without the operand of an executed edge, like a loop header of the
+						//classic SSA, can't be followed
+						SSAInstruction operand = phi.getOperandForBlock(precedent);
+						value = operand != null ? value.meet(getValue(operand)) : Value.OVERDEFINED;
+					}
+				}
+				setValue(phi, value);
+			} else if(instruction instanceof BinarySSAInstruction) {
+				setValue(instruction, evaluate((BinarySSAInstruction)instruction));
+			} else if(instruction instanceof ConstantSSAInstruction) {
+				setValue(instruction, new Value(((ConstantSSAInstruction)instruction).getValue()));
+			} else {
+				setValue(instruction, Value.OVERDEFINED);
+			}
+		}
+
+		private void visitBranch(ConditionalBranchSSAInstruction branch) {
+			Value condition = getValue(branch.getCondition());
+			if(condition == Value.UNKNOWN) {
+				return;
+			}
+			Block block = branch.getBlock();
+			Block notTaken = null;
+			if(condition.isConstant()) {
+				notTaken = condition.constant != 0 ? branch.getFallThroughBlock() : branch.getBranchBlock();
+				if(notTaken == branch.getBranchBlock() && notTaken == branch.getFallThroughBlock()) {
+					notTaken = null;
+				}
+			}
+			for(Block successor : block.getSubsequentBlocks()) {
+				if(successor != notTaken) {
+					edgeWorklist.add(new Block[] {block, successor});
+				}
+			}
+		}
+
+		private Value evaluate(BinarySSAInstruction binary) {
+			Value left = getValue(binary.getLeftOperand());
+			Value right = getValue(binary.getRightOperand());
+			if(left == Value.OVERDEFINED || right == Value.OVERDEFINED) {
+				return Value.OVERDEFINED;
+			} else if(left == Value.UNKNOWN || right == Value.UNKNOWN) {
+				return Value.UNKNOWN;
+			}
+			int leftValue = left.constant;
+			int rightValue = right.constant;
+			int result;
+			if(binary instanceof ComputationSSAInstruction) {
+				switch (((ComputationSSAInstruction)binary).getType()) {
+					case ADD:
+						result = leftValue + rightValue;
+						break;
+					case MINUS:
+						result = leftValue - rightValue;
+						break;
+					case TIMES:
+						result = leftValue * rightValue;
+						break;
+					case DIVIDE:
+						if(rightValue == 0) {
+							return Value.OVERDEFINED;  //left for the program to fail at run time
 						}
-					} else if (instruction instanceof ConditionalBranchSSAInstruction) {
+						result = leftValue / rightValue;
+						break;
+					default:
+						throw new RuntimeException("Unexpected Binary Computation Operator Type!");
+				}
+			} else {
+				switch (((ConditionSSAInstruction)binary).getType()) {
+					case EQUAL:
+						result = leftValue == rightValue ? 1 : 0;
+						break;
+					case NEQUAL:
+						result = leftValue == rightValue ? 0 : 1;
+						break;
+					case LESS:
+						result = leftValue < rightValue ? 1 : 0;
+						break;
+					case LARGER:
+						result = leftValue > rightValue ? 1 : 0;
+						break;
+					case LEQ:
+						result = leftValue <= rightValue ? 1 : 0;
+						break;
+					case GEQ:
+						result = leftValue >= rightValue ? 1 : 0;
+						break;
+					default:
+						throw new RuntimeException("Unexpected Binary Computation Operator Type!");
+				}
+			}
+			return new Value(result);
+		}
+
+		/**
+		 * Constants outside the blocks, like the initial values, are known. Any other value
+		 * that is not in a block of the method can't be followed and is overdefined.
+		 */
+		private Value getValue(SSAInstruction instruction) {
+			Value value = values.get(instruction);
+			if(value != null) {
+				return value;
+			} else if(instruction instanceof ConstantSSAInstruction) {
+				return new Value(((ConstantSSAInstruction)instruction).getValue());
+			}
+			return Value.OVERDEFINED;
+		}
+
+		private void setValue(SSAInstruction instruction, Value value) {
+			Value old = values.get(instruction);
+			if(old == value || (old.isConstant() && value.isConstant())) {
+				return;
+			}
+			values.put(instruction, value);
+			valueWorklist.add(instruction);
+		}
+
+		private boolean rewrite() {
+			boolean changed = false;
+			List<SSAInstruction> folded = new ArrayList<SSAInstruction>();
+			for(Block block : new ArrayList<Block>(method.getBlocks())) {
+				if(!executableBlocks.contains(block)) {
+					continue;
+				}
+				for(SSAInstruction instruction : new ArrayList<SSAInstruction>(block.getInstructions())) {
+					Value value = values.get(instruction);
+					if((instruction instanceof BinarySSAInstruction || instruction instanceof PhiSSAInstruction)
+							&& value.isConstant()) {
+						//takes the number of the instruction it replaces, in streaming mode the
+						//context is still numbering the functions being parsed
+						ConstantSSAInstruction constant = new ConstantSSAInstruction((CompilationContext)null, value.constant);
+						instruction.replaceInPlace(constant);
+						chains.replaceUses(instruction, constant);
+						folded.add(instruction);
+						if(block instanceof JoinBlock) {
+							((JoinBlock)block).getAllPhis().remove(instruction);
+						}
+						changed = true;
+					} else if(instruction instanceof ConditionalBranchSSAInstruction) {
 						/*
 						 * If an Conditional Branch Instruction as a constants condition after constant propagation, then
 						 * we can know which way to branch and replace it to uncondition branch.
 						 * It helps to find more unreachable blocks.
 						 */
 						ConditionalBranchSSAInstruction conditionBranch = (ConditionalBranchSSAInstruction) instruction;
-						if(conditionBranch.getCondition() instanceof ConstantSSAInstruction) {
-							 int value = ((ConstantSSAInstruction)conditionBranch.getCondition()).getValue();
-							 Block branchBlock = conditionBranch.getBranchBlock();
-							 Block fallThroughBlock = conditionBranch.getFallThroughBlock();
-							 UnconditionalBranchSSAInstruction branch  = null;
-							 if(value == 1) {
-								 branch = new UnconditionalBranchSSAInstruction(null, branchBlock);
-								 fallThroughBlock.removePrecedentBlock(conditionBranch.getBlock());
-								 conditionBranch.replaceInPlace(branch);
-							 } else {
-								 branch = new UnconditionalBranchSSAInstruction(null, fallThroughBlock);
-								 branchBlock.removePrecedentBlock(conditionBranch.getBlock());
-								 conditionBranch.replaceInPlace(branch);
-							 }
+						Value condition = getValue(conditionBranch.getCondition());
+						if(condition.isConstant()
+								&& conditionBranch.getBranchBlock() != conditionBranch.getFallThroughBlock()) {
+							Block branchBlock = conditionBranch.getBranchBlock();
+							Block fallThroughBlock = conditionBranch.getFallThroughBlock();
+							if(condition.constant != 0) {
+								conditionBranch.replaceInPlace(new UnconditionalBranchSSAInstruction(null, branchBlock));
+								removeEdge(block, fallThroughBlock);
+							} else {
+								conditionBranch.replaceInPlace(new UnconditionalBranchSSAInstruction(null, fallThroughBlock));
+								removeEdge(block, branchBlock);
+							}
+							conditionBranch.getCondition().removeUsage(conditionBranch);
+							changed = true;
 						}
 					}
-					
+				}
+			}
+			//a folded instruction may still be in the chains of its operands and get constants
+			//as operands, so its usages are only released when all the uses are replaced
+			for(SSAInstruction instruction : folded) {
+				for(SSAInstruction operand : instruction.getOperands()) {
+					operand.removeUsage(instruction);
+				}
+			}
+			return changed;
+		}
+
+		private void removeEdge(Block block, Block successor) {
+			block.getSubsequentBlocks().remove(successor);
+			successor.removePrecedentBlock(block);
+			if(successor instanceof JoinBlock) {
+				for(PhiSSAInstruction phi : ((JoinBlock)successor).getAllPhis()) {
+					SSAInstruction operand = phi.getOperandForBlock(block);
+					if(operand != null) {
+						operand.removeUsage(phi);
+						phi.removeOperandForBlock(block);
+					}
 				}
 			}
 		}
@@ -1,6 +1,10 @@
 package edu.uci.eecs.compiler.optimization;
 
-import edu.uci.eecs.compiler.model.Program;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import edu.uci.eecs.compiler.model.Method;
 
 import edu.uci.eecs.compiler.representation.SSAInstruction;
@@ -9,33 +13,58 @@ import edu.uci.eecs.compiler.representation.SSAInstruction.*;
 
 /**
  * 
- * Remove the code without usage
+ * Remove the code without usage. The instructions with side effects are live, and
+ * so is every operand of a live instruction, the others are removed. Values that are
+ * only used by dead instructions, like a cycle of phis, are removed as well.
  * 
  * @author Peter
  *
  */
 
-public class DeadCodeEliminator implements Optimizer {
-	private Program program;
+public class DeadCodeEliminator implements Pass {
 	
-	public DeadCodeEliminator(Program program) {
-		this.program = program;
+	public String getName() {
+		return "dce";
 	}
 	
+	//only instructions are removed, no blocks or edges
+	public Set<Analysis<?>> getPreservedAnalyses() {
+		return PassManager.preserve(Analysis.DOMINATORS, Analysis.LOOPS);
+	}
 	
-	public void optimize() {
-		for(Method method: program.getMethods()) {
-			for(Block block:method.getBlocks()) {
-				for(SSAInstruction instruction: block.getInstructions()) {
-					if(hasValue(instruction)) {
-						if(!instruction.hasUsage()){
-							block.removeInstruction(instruction);
-						}
+	public boolean run(Method method, AnalysisManager analyses) {
+		HashSet<SSAInstruction> live = new HashSet<SSAInstruction>();
+		List<SSAInstruction> worklist = new ArrayList<SSAInstruction>();
+		for(Block block:method.getBlocks()) {
+			for(SSAInstruction instruction: block.getInstructions()) {
+				if(!hasValue(instruction)) {
+					live.add(instruction);
+					worklist.add(instruction);
+				}
+			}
+		}
+		while(!worklist.isEmpty()) {
+			SSAInstruction instruction = worklist.remove(worklist.size() - 1);
+			for(SSAInstruction operand : instruction.getOperands()) {
+				if(live.add(operand)) {
+					worklist.add(operand);
+				}
+			}
+		}
+		
+		boolean changed = false;
+		for(Block block:method.getBlocks()) {
+			for(SSAInstruction instruction: new ArrayList<SSAInstruction>(block.getInstructions())) {
+				if(!live.contains(instruction)) {
+					block.removeInstruction(instruction);
+					for(SSAInstruction operand : instruction.getOperands()) {
+						operand.removeUsage(instruction);
 					}
+					changed = true;
 				}
 			}
-			
 		}
+		return changed;
 	}
 	
 	private boolean hasValue(SSAInstruction instruction) {
@@ -48,7 +77,10 @@ public class DeadCodeEliminator implements Optimizer {
 			instruction instanceof DeclareArraySSAInstruction ||
 			instruction instanceof CallSSAInstruction ||
 			instruction instanceof WriteSSAInstruction ||
-			instruction instanceof WritelnSSAInstruction) {
+			instruction instanceof WritelnSSAInstruction ||
+			//reads the input and takes a parameter slot even if the value is unused
+			instruction instanceof ReadSSAInstruction ||
+			instruction instanceof ParameterSSAInstruction) {
 			return false;
 		}
 		
@@ -1,6 +0,0 @@
-package edu.uci.eecs.compiler.optimization;
-
-public interface Optimizer {
-
-	public void optimize();
-}
@@ -0,0 +1,26 @@
+package edu.uci.eecs.compiler.optimization;
+
+import java.util.Set;
+
+import edu.uci.eecs.compiler.model.Method;
+
+/**
+ * A transformation of one method, run by the PassManager. The analyses it needs are
+ * taken from the AnalysisManager, so they are only computed when no earlier pass left
+ * a valid result.
+ *
+ */
+public interface Pass {
+
+	public String getName();
+
+	/**
+	 * @return whether the method was changed
+	 */
+	public boolean run(Method method, AnalysisManager analyses);
+
+	/**
+	 * @return analyses that are still valid after the pass changed the method
+	 */
+	public Set<Analysis<?>> getPreservedAnalyses();
+}
@@ -0,0 +1,131 @@
+package edu.uci.eecs.compiler.optimization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.uci.eecs.compiler.model.CompileStatistics;
+import edu.uci.eecs.compiler.model.Method;
+import edu.uci.eecs.compiler.model.Program;
+import edu.uci.eecs.compiler.util.CompilerEvents;
+import edu.uci.eecs.compiler.util.CompilerEvents.PassEvent;
+
+/**
+ * Runs a pipeline of passes method by method. The analyses are cached per method
+ * by the AnalysisManager, after a pass changed a method only the analyses it doesn't
+ * preserve are dropped. The results of a method are released when the pipeline is
+ * done with it.
+ *
+ * A pipeline is a comma separated list of pass names, "default" stands for
+ * the DEFAULT_PIPELINE:
+ *   constant      sparse conditional constant propagation, ConstantEvaluator
+ *   unreachable   remove blocks that can't be reached, UnreachableCodeEliminator
+ *   cse           global value numbering over the dominator tree, CommonSubexpressionEliminator
+ *   dce           remove values that are never used, DeadCodeEliminator
+ *
+ */
+public class PassManager {
+
+	public static final String DEFAULT_PIPELINE = "constant,unreachable,cse,dce";
+
+	private List<Pass> passes;
+	private AnalysisManager analyses;
+
+	public PassManager() {
+		this.passes = new ArrayList<Pass>();
+		this.analyses = new AnalysisManager();
+	}
+
+	/**
+	 * @throws IllegalArgumentException for an unknown pass
+	 */
+	public static PassManager createPipeline(String pipeline) {
+		PassManager manager = new PassManager();
+		for(String name : pipeline.split(",")) {
+			name = name.trim();
+			if(name.equals("default")) {
+				for(String defaultName : DEFAULT_PIPELINE.split(",")) {
+					manager.addPass(createPass(defaultName));
+				}
+			} else if(name.length() > 0) {
+				manager.addPass(createPass(name));
+			}
+		}
+		return manager;
+	}
+
+	public static Pass createPass(String name) {
+		if(name.equals("constant")) {
+			return new ConstantEvaluator();
+		} else if(name.equals("unreachable")) {
+			return new UnreachableCodeEliminator();
+		} else if(name.equals("cse")) {
+			return new CommonSubexpressionEliminator();
+		} else if(name.equals("dce")) {
+			return new DeadCodeEliminator();
+		}
+		throw new IllegalArgumentException("Unknown pass: " + name);
+	}
+
+	/**
+	 * @return set of the analyses, for Pass.getPreservedAnalyses
+	 */
+	public static Set<Analysis<?>> preserve(Analysis<?>... preserved) {
+		if(preserved.length == 0) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(new HashSet<Analysis<?>>(Arrays.asList(preserved)));
+	}
+
+	public void addPass(Pass pass) {
+		passes.add(pass);
+	}
+
+	public List<Pass> getPasses() {
+		return passes;
+	}
+
+	public AnalysisManager getAnalyses() {
+		return analyses;
+	}
+
+	public void run(Program program) {
+		for(Method method : program.getMethods()) {
+			run(method);
+		}
+	}
+
+	/**
+	 * Every pass is measured when the context of the method has statistics.
+	 */
+	public void run(Method method) {
+		CompileStatistics statistics = method.getContext().getStatistics();
+		for(Pass pass : passes) {
+			CompileStatistics.Measurement measurement = statistics != null ? statistics.begin(pass.getName(), method) : null;
+			PassEvent event = new PassEvent();
+			if(event.isEnabled()) {
+				event.instructionsBefore = CompilerEvents.instructions(method);
+			}
+			event.begin();
+			boolean changed = pass.run(method, analyses);
+			event.end();
+			if(measurement != null) {
+				measurement.end(method);
+			}
+			if(event.shouldCommit()) {
+				event.pass = pass.getName();
+				event.method = method.getName();
+				event.instructionsAfter = CompilerEvents.instructions(method);
+				event.changed = changed;
+				event.commit();
+			}
+			if(changed) {
+				analyses.invalidate(method, pass.getPreservedAnalyses());
+			}
+		}
+		analyses.release(method);
+	}
+}
@@ -1,6 +1,9 @@
 package edu.uci.eecs.compiler.optimization;
 
-import edu.uci.eecs.compiler.model.Program;
+import java.util.ArrayList;
+import java.util.Set;
+
+import edu.uci.eecs.compiler.model.DominatorTree;
 import edu.uci.eecs.compiler.model.Method;
 import edu.uci.eecs.compiler.representation.Block;
 import edu.uci.eecs.compiler.representation.Block.JoinBlock;
@@ -14,39 +17,50 @@ import edu.uci.eecs.compiler.representation.SSAInstruction.*;
  * @author Peter
  *
  */
-public class UnreachableCodeEliminator implements Optimizer{
+public class UnreachableCodeEliminator implements Pass {
 	
-	private Program program;
+	public String getName() {
+		return "unreachable";
+	}
 	
-	public UnreachableCodeEliminator(Program program) {
-		this.program = program;
+	public Set<Analysis<?>> getPreservedAnalyses() {
+		return PassManager.preserve();
 	}
 	
-	public void optimize() {
-		removeUnreachableBlocks();
+	public boolean run(Method method, AnalysisManager analyses) {
+		return removeUnreachableBlocks(method, analyses.get(Analysis.DOMINATORS, method));
 	}
 	
 	/**
 	 * 
-	 * remove blocks without precedent blocks
+	 * remove blocks that can't be reached from the begin block, the exit block stays
 	 */
-	private void removeUnreachableBlocks() {
-		for(Method method : program.getMethods()) {
-			for(Block block : method.getBlocks()) {
-				if(block.getPrecdentBlockNumber() == 0 && !block.isEntry()) {
-					for(Block successor : block.getSubsequentBlocks()) {
-						if(successor instanceof JoinBlock) {
-							for(PhiSSAInstruction phi: ((JoinBlock)successor).getAllPhis()) {
+	private boolean removeUnreachableBlocks(Method method, DominatorTree tree) {
+		boolean changed = false;
+		for(Block block : new ArrayList<Block>(method.getBlocks())) {
+			if(!tree.isReachable(block) && !block.isEntry() && block != method.getExitBlock()) {
+				for(Block successor : block.getSubsequentBlocks()) {
+					if(successor instanceof JoinBlock) {
+						for(PhiSSAInstruction phi: ((JoinBlock)successor).getAllPhis()) {
+							SSAInstruction operand = phi.getOperandForBlock(block);
+							if(operand != null) {
+								operand.removeUsage(phi);
 								phi.removeOperandForBlock(block);
 							}
 						}
-					}	
-					method.removeBlock(block);
-				} else {
-					removeUnreachableInstructions(block);
+					}
+					successor.removePrecedentBlock(block);
+				}	
+				for(SSAInstruction instruction : new ArrayList<SSAInstruction>(block.getInstructions())) {
+					removeInstruction(block, instruction);
 				}
+				method.removeBlock(block);
+				changed = true;
+			} else if(removeUnreachableInstructions(block)) {
+				changed = true;
 			}
 		}
+		return changed;
 	}
 	
 	/**
@@ -54,17 +68,30 @@ public class UnreachableCodeEliminator implements Optimizer{
 	 * 
 	 * @param block
 	 */
-	private void removeUnreachableInstructions(Block block) {
+	private boolean removeUnreachableInstructions(Block block) {
 		boolean remove = false;
-		for(SSAInstruction instruction : block.getInstructions()) {
+		boolean changed = false;
+		for(SSAInstruction instruction : new ArrayList<SSAInstruction>(block.getInstructions())) {
 			if(instruction instanceof UnconditionalBranchSSAInstruction) {
 				remove = true;
 			} else if(remove) {
-				System.out.print("Remove Unreachable Instruction: " + instruction);
-				block.removeInstruction(instruction);
+				removeInstruction(block, instruction);
+				changed = true;
 			}
 			
 		}
+		return changed;
+	}
+
+	/**
+	 * Remove the instruction and its usages, so replacing its operands later doesn't
+	 * touch an instruction that is no longer in the method.
+	 */
+	private void removeInstruction(Block block, SSAInstruction instruction) {
+		block.removeInstruction(instruction);
+		for(SSAInstruction operand : instruction.getOperands()) {
+			operand.removeUsage(instruction);
+		}
 	}
 
 	/**
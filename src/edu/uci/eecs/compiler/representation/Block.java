@@ -1,5 +1,8 @@
 package edu.uci.eecs.compiler.representation;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -9,7 +12,6 @@ import edu.uci.eecs.compiler.representation.SSAInstruction.*;
 import edu.uci.eecs.compiler.util.Constant;
 
 public class Block {
-	private static int nextBlockId = 0;
 	protected int id;
 	protected Method method;
 	protected State beginState;
@@ -18,6 +20,11 @@ public class Block {
 	protected ArrayList<Block> precedentBlocks;
 	protected ArrayList<Block> subsequentBlocks;
 	protected ArrayList<SSAInstruction> instructions;
+	protected boolean ordinalsValid;
+	
+	//interval of the block in the dominator tree, set by DominatorTree
+	protected int preorder = -1;
+	protected int postorder = -1;
 	
 	protected boolean join;
 	protected boolean exit;
@@ -25,7 +32,7 @@ public class Block {
 	
 	
 	public Block(Method method) {
-		this.id = nextBlockId ++;
+		this.id = method.getContext().nextBlockId();
 		this.method = method;
 		this.method.addBlock(this);
 		this.precedentBlocks = new ArrayList<Block>();
@@ -38,6 +45,7 @@ public class Block {
 	
 	public void removePrecedentBlock(Block block) {
 		this.precedentBlocks.remove(block);
+		this.method.invalidateDominatorTree();
 	}
 
 	public void addPrecedentBlock(Block block) {
@@ -48,14 +56,7 @@ public class Block {
 	public void addSubsequentBlock(Block block) {
 		this.subsequentBlocks.add(block);
 		block.precedentBlocks.add(this);
-	}
-	
-	public static int getNextBlockId() {
-		return nextBlockId;
-	}
-
-	public static void setNextBlockId(int nextBlockId) {
-		Block.nextBlockId = nextBlockId;
+		this.method.invalidateDominatorTree();
 	}
 	
 	public void visit(BlockVisitor visitor) {
@@ -65,6 +66,13 @@ public class Block {
 	public int getId() {
 		return id;
 	}
+	
+	/**
+	 * Move the id given by the context of one function behind the ids of the program.
+	 */
+	public void moveId(int base) {
+		id += base;
+	}
 
 	public void setId(int id) {
 		this.id = id;
@@ -112,6 +120,7 @@ public class Block {
 
 	public void setPrecedentBlocks(ArrayList<Block> precedentBlocks) {
 		this.precedentBlocks = precedentBlocks;
+		this.method.invalidateDominatorTree();
 	}
 
 	public ArrayList<Block> getSubsequentBlocks() {
@@ -124,6 +133,7 @@ public class Block {
 
 	public void setSubsequentBlocks(ArrayList<Block> subsequentBlocks) {
 		this.subsequentBlocks = subsequentBlocks;
+		this.method.invalidateDominatorTree();
 	}
 
 	public ArrayList<SSAInstruction> getInstructions() {
@@ -136,24 +146,55 @@ public class Block {
 
 	public void setInstructions(ArrayList<SSAInstruction> instructions) {
 		this.instructions = instructions;
+		this.ordinalsValid = false;
 	}
 	
+	/**
+	 * Position of the instruction in this block, so dominance between two instructions
+	 * of the same block is a comparison. The positions are renumbered lazily after the
+	 * instructions change through the methods of Block.
+	 * @param instruction
+	 */
+	public int getOrdinal(SSAInstruction instruction) {
+		if(!ordinalsValid) {
+			for(int i = 0; i < instructions.size(); i++) {
+				instructions.get(i).ordinal = i;
+			}
+			ordinalsValid = true;
+		}
+		return instruction.ordinal;
+	}
+	
+	/**
+	 * Phis are always kept at the beginning of the block, even if they are placed
+	 * after the block is filled.
+	 * @param instruction
+	 */
 	public void addInstruction(SSAInstruction instruction) {
-		this.instructions.add(instruction);
+		if(instruction instanceof PhiSSAInstruction) {
+			int position = 0;
+			while(position < instructions.size() && instructions.get(position) instanceof PhiSSAInstruction) {
+				position++;
+			}
+			this.instructions.add(position, instruction);
+			this.ordinalsValid = false;
+		} else {
+			instruction.ordinal = this.instructions.size();
+			this.instructions.add(instruction);
+		}
 	}
 	
 	public void removeInstruction(SSAInstruction instruction) {
 		this.instructions.remove(instruction);
+		this.ordinalsValid = false;
 	}
 	
 	public void replaceInstruction(SSAInstruction oldInstruction, SSAInstruction newInstruction){
-		for(SSAInstruction instruction: instructions) {
-			if(instruction.equals(oldInstruction)) {
-				instruction = newInstruction;
-				return;
-			}
+		int position = instructions.indexOf(oldInstruction);
+		if(position >= 0) {
+			instructions.set(position, newInstruction);
+			newInstruction.ordinal = position;
 		}
-		return;
 	}
 
 	public State getBeginState() {
@@ -182,16 +223,20 @@ public class Block {
 	
 	public boolean isDominater(Block block) {
 		
-		Block dominator = this.getDominator();
-		while(dominator!=null){
-			
-			if(dominator.equals(block)) {
-				return true;
-			}
-			dominator = dominator.getDominator();
-		}
-		
-		return false;
+		return method.getDominatorTree().isDominator(block, this);
+	}
+	
+	public void setDominatorInterval(int preorder, int postorder) {
+		this.preorder = preorder;
+		this.postorder = postorder;
+	}
+	
+	public int getPreorder() {
+		return preorder;
+	}
+	
+	public int getPostorder() {
+		return postorder;
 	}
 	
 	@Override
@@ -200,26 +245,37 @@ public class Block {
 	}
 	
 	public String toGraph() {
-		String blockContent= "	subgraph cluster" + id + "{ style=filled; color=yellow; node [fontsize = 12, shape=box, align=left]; " + Constant.LINE_SEPARATER;
-		blockContent += "label = \"block " + id +"\";"+ Constant.LINE_SEPARATER;
-		blockContent += "\"start" + id + "\" ->";
-		for(SSAInstruction instruction : instructions) {
-			if(instruction.equals(instructions.get(instructions.size()-1))) {
-				if(instructions.size() == 1) {
-					blockContent += "\"" + instruction.toString() + " \"";
+		StringWriter writer = new StringWriter();
+		try {
+			toGraph(writer);
+		} catch (IOException e) {
+			//a StringWriter doesn't throw
+		}
+		return writer.toString();
+	}
+	
+	public void toGraph(Writer writer) throws IOException {
+		writer.write("	subgraph cluster" + id + "{ style=filled; color=yellow; node [fontsize = 12, shape=box, align=left]; " + Constant.LINE_SEPARATER);
+		writer.write("label = \"block " + id +"\";"+ Constant.LINE_SEPARATER);
+		writer.write("\"start" + id + "\" ->");
+		int last = instructions.size() - 1;
+		for(int i = 0; i <= last; i++) {
+			String instruction = instructions.get(i).toString();
+			if(i == last) {
+				if(last == 0) {
+					writer.write("\"" + instruction + " \"");
 				} else {
-					blockContent += instruction.toString()+" \"";
+					writer.write(instruction + " \"");
 				}
-			} else if (instruction.equals(instructions.get(0))){
-				blockContent +="\"" + instruction.toString() + "\\l";
+			} else if (i == 0){
+				writer.write("\"" + instruction + "\\l");
 			} else {
-				blockContent += instruction.toString() + "\\l";
+				writer.write(instruction + "\\l");
 			}
 			
 		}
-		blockContent += " -> \"end" + id + "\"";
-		blockContent += ";}";
-		return blockContent;
+		writer.write(" -> \"end" + id + "\"");
+		writer.write(";}");
 	}
 
 	/**
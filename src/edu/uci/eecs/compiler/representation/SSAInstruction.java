@@ -1,11 +1,14 @@
 package edu.uci.eecs.compiler.representation;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map.Entry;
 
+import edu.uci.eecs.compiler.model.CompilationContext;
 import edu.uci.eecs.compiler.model.UsageList;
 import edu.uci.eecs.compiler.util.ComputationOperatorType;
 import edu.uci.eecs.compiler.util.ComparsionOperatorType;
@@ -63,23 +66,38 @@ public class SSAInstruction {
 	protected UsageList usageList;
 	
 	protected boolean isPlaced;
-
-	//global index for generating the index number for each instruction.
-	protected static int nextInstructionNumber;
+	protected int ordinal;    //position in the block, see Block.getOrdinal
 	
 	public SSAInstruction(Block block) {
+		this(block, block != null ? block.getMethod().getContext() : null);
+	}
+	
+	/**
+	 * The number is taken from the compilation context, an instruction created without
+	 * a block and without a context gets -1 until it replaces another instruction in place.
+	 * @param block
+	 * @param context
+	 */
+	protected SSAInstruction(Block block, CompilationContext context) {
 		this.block = block;
 		if(this.block != null){
 			this.block.addInstruction(this);
 		}
 		this.usageList = new UsageList(this);
-		this.number = nextInstructionNumber++;
+		this.number = context != null ? context.nextInstructionNumber(this) : -1;
 	}
 	
 	public int getInstructionId() {
 		return this.number;
 	}
 	
+	/**
+	 * Move the number given by the context of one function behind the numbers of the program.
+	 */
+	public void moveNumber(int base) {
+		number += base;
+	}
+	
 	public boolean hasUsage() {
 		return !usageList.isEmpty();
 	}
@@ -88,6 +106,13 @@ public class SSAInstruction {
 		return block;
 	}
 	
+	/**
+	 * @return the instructions whose values this instruction uses
+	 */
+	public List<SSAInstruction> getOperands() {
+		return Collections.emptyList();
+	}
+	
 	/**
 	 * Try to replace the operands for instructions that used this instruction
 	 * @param originalInstruction
@@ -115,10 +140,19 @@ public class SSAInstruction {
 	 * @param newInstruction
 	 */
 	public void replace(SSAInstruction newInstruction) {
-		usageList.notifyUsages(newInstruction);
+		replaceUsages(newInstruction);
 		block.removeInstruction(this);
 	}
 	
+	/**
+	 * Let all the usages of this instruction use the new instruction, but keep this
+	 * instruction in the block.
+	 * @param newInstruction
+	 */
+	public void replaceUsages(SSAInstruction newInstruction) {
+		usageList.notifyUsages(newInstruction);
+	}
+	
 	public void replaceInPlace(SSAInstruction newInstruction) {
 		newInstruction.block = this.block;
 		newInstruction.number = this.number;
@@ -163,11 +197,16 @@ public class SSAInstruction {
 			this.rightOperand = rightOperand;
 		}
 		
+		public List<SSAInstruction> getOperands() {
+			return Arrays.asList(leftOperand, rightOperand);
+		}
+		
 		public void replaceUsage(SSAInstruction originalInstruction, SSAInstruction newInstruction) {
 			
 			if(leftOperand.equals(originalInstruction)) {
 				leftOperand = newInstruction;
-			} else if (rightOperand.equals(originalInstruction)) {
+			}
+			if (rightOperand.equals(originalInstruction)) {
 				rightOperand = newInstruction;
 			}
 		}
@@ -239,6 +278,7 @@ public class SSAInstruction {
 			super(block);
 			this.condition =condition;
 			this.branchBlock = bralock;
+			condition.addUsage(this);
 			this.fallThroughBlock = fallThroughBlock;
 		}
 		
@@ -254,6 +294,10 @@ public class SSAInstruction {
 			return condition;
 		}
 		
+		public List<SSAInstruction> getOperands() {
+			return Collections.singletonList(condition);
+		}
+		
 		@Override
 		public void replaceUsage(SSAInstruction original, SSAInstruction newInstruction) {
 			
@@ -300,12 +344,20 @@ public class SSAInstruction {
 		public LoadSSAInstruction(Block block, SSAInstruction address) {
 			super(block);
 			this.address = address;
+			address.addUsage(this);
+		}
+		
+		public SSAInstruction getAddress() {
+			return address;
+		}
+		
+		public List<SSAInstruction> getOperands() {
+			return Collections.singletonList(address);
 		}
 		
 		@Override
 		public void replaceUsage(SSAInstruction original, SSAInstruction newInstruction) {
 			if(address == original) {
-				original.removeUsage(this);
 				address = newInstruction;
 			}
 		}
@@ -322,13 +374,19 @@ public class SSAInstruction {
 	
 	//Use to load a variable
 	public static class LoadVariableSSAInstruction extends SSAInstruction {
+		private int variableId;
 		private String identifier;
 		
-		public LoadVariableSSAInstruction(Block block, String identifier) {
+		public LoadVariableSSAInstruction(Block block, int variableId, String identifier) {
 			super(block);
+			this.variableId = variableId;
 			this.identifier = identifier;
 		}
 		
+		public int getVariableId() {
+			return variableId;
+		}
+		
 		@Override
 		public String toString() {
 			return super.toString() + "LoadVariable" + identifier;
@@ -345,7 +403,7 @@ public class SSAInstruction {
 		
 		public LoadArraySSAInstruction(Block block, String arrayName) {
 			super(block);
-			this.name = name;
+			this.name = arrayName;
 		}
 		
 		public String getName() {
@@ -409,6 +467,8 @@ public class SSAInstruction {
 			this.reference = reference;
 			this.expression = expression;
 			this.multipler = multipler;
+			reference.addUsage(this);
+			expression.addUsage(this);
 		}
 
 		public int getMultipler() {
@@ -423,12 +483,19 @@ public class SSAInstruction {
 			return expression;
 		}
 		
+		public List<SSAInstruction> getOperands() {
+			return Arrays.asList(reference, expression);
+		}
+		
 		//replace the expression for the index instruction
 		public void replaceUsage(SSAInstruction originalInstruction, SSAInstruction newInstruction) {
 			
 			if(expression.equals(originalInstruction)) {
 				this.expression = newInstruction;
 			}
+			if(reference.equals(originalInstruction)) {
+				this.reference = newInstruction;
+			}
 		}
 		
 		@Override
@@ -453,6 +520,27 @@ public class SSAInstruction {
 			value.addUsage(this);
 		}
 		
+		public SSAInstruction getAddress() {
+			return address;
+		}
+		
+		public SSAInstruction getValue() {
+			return value;
+		}
+		
+		public List<SSAInstruction> getOperands() {
+			return Arrays.asList(address, value);
+		}
+		
+		public void replaceUsage(SSAInstruction original, SSAInstruction newInstruction) {
+			if(address.equals(original)) {
+				address = newInstruction;
+			}
+			if(value.equals(original)) {
+				value = newInstruction;
+			}
+		}
+		
 		@Override
 		public String toString() {
 			return super.toString() + "Store Address " + address.number + " Value " + value.number; 
@@ -464,16 +552,36 @@ public class SSAInstruction {
 	}
 	
 	public static class StoreVariableSSAInstruction extends SSAInstruction {
+		private int variableId;
 		private String name;
 		private SSAInstruction value;
 		
-		public StoreVariableSSAInstruction(Block block, String name, SSAInstruction value) {
+		public StoreVariableSSAInstruction(Block block, int variableId, String name, SSAInstruction value) {
 			super(block);
+			this.variableId = variableId;
 			this.name = name;
 			this.value = value;
 			value.addUsage(this);
 		}
 		
+		public int getVariableId() {
+			return variableId;
+		}
+		
+		public SSAInstruction getValue() {
+			return value;
+		}
+		
+		public List<SSAInstruction> getOperands() {
+			return Collections.singletonList(value);
+		}
+		
+		public void replaceUsage(SSAInstruction original, SSAInstruction newInstruction) {
+			if(value.equals(original)) {
+				value = newInstruction;
+			}
+		}
+		
 		@Override
 		public String toString() {
 			return super.toString() + "Store Variable " + name + "Value " + value.number;
@@ -487,13 +595,19 @@ public class SSAInstruction {
 	/****************** Instructions for Phi function *******************/
 	
 	public static class PhiSSAInstruction extends SSAInstruction{
+		private int variableId;
 		private String name;
 		private HashMap<Block,  SSAInstruction> operands;
 		
-		public PhiSSAInstruction(Block block, String name) {
+		public PhiSSAInstruction(Block block, int variableId, String name) {
 			super(block);
+			this.variableId = variableId;
 			this.name = name;
-			this.operands = new HashMap<Block, SSAInstruction>();
+			this.operands = new LinkedHashMap<Block, SSAInstruction>();
+		}
+		
+		public int getVariableId() {
+			return this.variableId;
 		}
 		
 		public String getVariableName() {
@@ -502,7 +616,7 @@ public class SSAInstruction {
 		
 		public void updateOperands() {
 			for(Block precedent : block.getPrecedentBlocks()){
-				SSAInstruction instruction = precedent.getEndState().getVariable(name);
+				SSAInstruction instruction = precedent.getEndState().getVariable(variableId);
 				if(instruction!=null) {
 					operands.put(precedent, instruction);
 				}
@@ -516,22 +630,20 @@ public class SSAInstruction {
 			} else {
 				operands.get(block).removeUsage(this);
 				operands.put(block, instruction);
+				instruction.addUsage(this);
 			}
 		}
 		
 		public void replaceUsage(SSAInstruction original, SSAInstruction newInstruction) {
-			if(operands.containsValue(original)) {
-				original.removeUsage(this);
-				for(SSAInstruction instruction : operands.values()) {
-					if (instruction.equals(original)) {
-						instruction = newInstruction;
-					}
+			for(Entry<Block, SSAInstruction> entry : operands.entrySet()) {
+				if (entry.getValue().equals(original)) {
+					entry.setValue(newInstruction);
 				}
 			}
 		}
 		
-		public Collection<SSAInstruction> getOperands() {
-			return operands.values();
+		public List<SSAInstruction> getOperands() {
+			return new ArrayList<SSAInstruction>(operands.values());
 		}
 		
 		public boolean hasOperand(SSAInstruction instruction) {
@@ -610,12 +722,15 @@ public class SSAInstruction {
 			return null;
 		}
 		
+		public List<SSAInstruction> getOperands() {
+			return new ArrayList<SSAInstruction>(parameters);
+		}
+		
 		public void replaceUsage(SSAInstruction original, SSAInstruction newInstruction) {
 
-			for(SSAInstruction instruction : parameters) {
-				if (instruction.equals(original)) {
-					instruction = newInstruction;
-					newInstruction.addUsage(this);
+			for(int i = 0; i < parameters.size(); i++) {
+				if (parameters.get(i).equals(original)) {
+					parameters.set(i, newInstruction);
 				}
 			}
 		}
@@ -654,10 +769,13 @@ public class SSAInstruction {
 			value.addUsage(this);
 		}
 		
+		public List<SSAInstruction> getOperands() {
+			return Collections.singletonList(value);
+		}
+		
 		public void replaceUsage(SSAInstruction original, SSAInstruction newInstruction) {
 			if(original.equals(value)) {
 				value = newInstruction;
-				newInstruction.addUsage(this);
 			}
 		}
 		
@@ -691,10 +809,13 @@ public class SSAInstruction {
 			operand.addUsage(this);
 		}
 		
+		public List<SSAInstruction> getOperands() {
+			return Collections.singletonList(operand);
+		}
+		
 		public void replaceUsage(SSAInstruction original, SSAInstruction newInstruction) {
-			if(operand.equals(operand)) {
+			if(operand.equals(original)) {
 				operand = newInstruction;
-				newInstruction.addUsage(this);
 			}
 		}
 		
@@ -731,6 +852,12 @@ public class SSAInstruction {
 			this.value = value;
 		}
 		
+		//constant that is not placed in a block
+		public ConstantSSAInstruction(CompilationContext context, int value) {
+			super(null, context);
+			this.value = value;
+		}
+		
 		public int getValue() {
 			return value;
 		}
@@ -745,8 +872,8 @@ public class SSAInstruction {
 		}
 	}
 	
-	public static ConstantSSAInstruction createInitialValue() {
-		return new ConstantSSAInstruction(null, 0);
+	public static ConstantSSAInstruction createInitialValue(CompilationContext context) {
+		return new ConstantSSAInstruction(context, 0);
 	}
 
 }
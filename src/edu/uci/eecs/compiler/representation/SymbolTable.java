@@ -1,104 +1,161 @@
 package edu.uci.eecs.compiler.representation;
 
+import edu.uci.eecs.compiler.util.Interner;
 import edu.uci.eecs.compiler.util.SymbolType;
 
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
-import java.util.Map.Entry;
 
+/**
+ * Symbols are indexed by the identifier ids of the Interner, the records are kept in
+ * an array and the declaration order is kept for iteration.
+ */
 public class SymbolTable {
-	
+
 	static public class TableRecord{
 		public int lineNumber;
+		public int id;
 		public String name;
 		public int version; //used for ssa assignment
 		public SymbolType type;
-		
-		public TableRecord(String name, int lineNumber, SymbolType type) {
+		public List<Integer> dimensions;
+		public int[] strides;  //for an array, the product of the dimensions after each dimension
+
+		public TableRecord(int id, String name, int lineNumber, SymbolType type) {
+			this.id = id;
 			this.name = name;
 			this.lineNumber = lineNumber;
 			this.type = type;
-		}	
-		
+		}
+
 		public SymbolType getType() {
 			return this.type;
 		}
 	}
-	
-	private HashMap<String, TableRecord> records;
-	private HashMap<String, List<Integer>> dimensions;
-	
-	public SymbolTable() {
-		this.records = new HashMap<String, TableRecord>();
-		this.dimensions = new HashMap<String, List<Integer>>();
+
+	private Interner interner;
+	private TableRecord[] records;
+	private int[] symbolIds;    //declared ids in declaration order
+	private int symbolNumber;
+
+	public SymbolTable(Interner interner) {
+		this.interner = interner;
+		this.records = new TableRecord[Math.max(16, interner.size())];
+		this.symbolIds = new int[16];
+	}
+
+	/**
+	 * @return ids of the declared symbols in declaration order
+	 */
+	public int[] getSymbolIds() {
+		int[] ids = new int[symbolNumber];
+		System.arraycopy(symbolIds, 0, ids, 0, symbolNumber);
+		return ids;
+	}
+
+	public int getSymbolNumber() {
+		return symbolNumber;
 	}
-	
-	public Set<String> getSymbols() {
-		return this.records.keySet();
+
+	public boolean isDeclared(int id) {
+		return id >= 0 && id < records.length && records[id] != null;
 	}
-	
+
 	public boolean isDeclared(String name) {
-		return records.containsKey(name);
-	}
-	
-	public SymbolType getType(String name) {
-		
-		assert isDeclared(name);
-		return records.get(name).type;
-	}
-	
-	public List<Integer> getDimension(String name) {
-		
-		assert getType(name) == SymbolType.ARRAY;
-		return this.dimensions.get(name);
-	}
-	
-	public void insertArray(String name, int lineNumber, List<Integer> dimentions) {
-		
-		TableRecord record = new TableRecord(name, lineNumber, SymbolType.ARRAY);
-		this.records.put(name, record);
-		this.dimensions.put(name, dimentions);
-	}
-	
-	public void insertFunction(String name, int lineNumber) {
-		
-		TableRecord record = new TableRecord(name, lineNumber, SymbolType.FUNCTION);
-		this.records.put(name, record);
-	}
-	
-	
-	public void insertVariable(String name, int lineNumber) {
-		
-		TableRecord record =  new TableRecord(name, lineNumber, SymbolType.INTEGER);
-		this.records.put(name, record);
-	}
-	
-	
+		return isDeclared(interner.lookup(name));
+	}
+
+	/**
+	 * @return the record of the id, null if it is not declared
+	 */
+	public TableRecord getRecord(int id) {
+		return isDeclared(id) ? records[id] : null;
+	}
+
+	public SymbolType getType(int id) {
+
+		assert isDeclared(id);
+		return records[id].type;
+	}
+
+	public List<Integer> getDimension(int id) {
+
+		assert getType(id) == SymbolType.ARRAY;
+		return records[id].dimensions;
+	}
+
+	public void insertArray(int id, int lineNumber, List<Integer> dimentions) {
+
+		TableRecord record = insert(id, lineNumber, SymbolType.ARRAY);
+		record.dimensions = dimentions;
+		record.strides = new int[dimentions.size()];
+		int stride = 1;
+		for(int i = dimentions.size() - 1; i >= 0; i--) {
+			record.strides[i] = stride;
+			stride *= dimentions.get(i);
+		}
+	}
+
+	public void insertFunction(int id, int lineNumber) {
+
+		insert(id, lineNumber, SymbolType.FUNCTION);
+	}
+
+
+	public void insertVariable(int id, int lineNumber) {
+
+		insert(id, lineNumber, SymbolType.INTEGER);
+	}
+
+	private TableRecord insert(int id, int lineNumber, SymbolType type) {
+		if(id >= records.length) {
+			TableRecord[] newRecords = new TableRecord[Math.max(id + 1, records.length * 2)];
+			System.arraycopy(records, 0, newRecords, 0, records.length);
+			records = newRecords;
+		}
+
+		if(records[id] == null) {
+			if(symbolNumber == symbolIds.length) {
+				int[] newIds = new int[symbolIds.length * 2];
+				System.arraycopy(symbolIds, 0, newIds, 0, symbolIds.length);
+				symbolIds = newIds;
+			}
+			symbolIds[symbolNumber++] = id;
+		}
+
+		TableRecord record = new TableRecord(id, interner.getName(id), lineNumber, type);
+		records[id] = record;
+		return record;
+	}
+
+
 	public List<String> getVariables() {
 		List<String> variables = new ArrayList<String>();
-		for(Entry<String, TableRecord> entry: records.entrySet()){
-			if(entry.getValue().getType().equals(SymbolType.INTEGER)) {
-				variables.add(entry.getKey());
+		for(int i = 0; i < symbolNumber; i++) {
+			TableRecord record = records[symbolIds[i]];
+			if(record.getType().equals(SymbolType.INTEGER)) {
+				variables.add(record.name);
 			}
 		}
-		
+
 		return variables;
 	}
-	
+
 	public List<String> getArrays() {
 		List<String> arrayNames = new ArrayList<String>();
-		for(String name : dimensions.keySet()) {
-			arrayNames.add(name);
+		for(int i = 0; i < symbolNumber; i++) {
+			TableRecord record = records[symbolIds[i]];
+			if(record.getType().equals(SymbolType.ARRAY)) {
+				arrayNames.add(record.name);
+			}
 		}
 		return arrayNames;
 	}
-	
-	public int getArraySize(String name) {
+
+	public int getArraySize(int id) {
 		int size = 0;
-		List<Integer> dimention = dimensions.get(name);
+		List<Integer> dimention = isDeclared(id) ? records[id].dimensions : null;
 		if(dimention != null && !dimention.isEmpty()) {
 			size = dimention.get(0);
 			for(int i = 1; i< dimention.size(); i++) {
@@ -0,0 +1,116 @@
+package edu.uci.eecs.compiler.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import edu.uci.eecs.compiler.model.Method;
+import edu.uci.eecs.compiler.representation.Block;
+
+/**
+ * Java Flight Recorder events of the compiler and the DLX emulator, recorded with
+ * e.g. -XX:StartFlightRecording. An event is created, begun and ended around its
+ * phase and only filled and committed if shouldCommit(); when the event is disabled
+ * the JIT removes the event object, so recording off costs next to nothing.
+ * Counting the instructions of a method walks its blocks, it is only done for
+ * enabled events.
+ *
+ */
+public class CompilerEvents {
+
+	private static final String CATEGORY = "PL241 Compiler";
+
+	/**
+	 * The stream scanner fills its ring in one stretch, the buffer scanner scans its
+	 * batch between the parsing, so only the scan time is the time spent scanning.
+	 */
+	@Name("edu.uci.eecs.compiler.Scan")
+	@Label("Scan")
+	@Description("A batch of tokens scanned")
+	@Category(CATEGORY)
+	public static class ScanEvent extends Event {
+		@Label("Tokens")
+		public int tokens;
+
+		@Label("Scan Time")
+		@Timespan(Timespan.NANOSECONDS)
+		public long scanTime;
+	}
+
+	@Name("edu.uci.eecs.compiler.Parse")
+	@Label("Parse")
+	@Description("Parse of one method, including its control flow graph")
+	@Category(CATEGORY)
+	public static class ParseEvent extends Event {
+		@Label("Method")
+		public String method;
+
+		@Label("Blocks")
+		public int blocks;
+
+		@Label("Instructions")
+		public int instructions;
+	}
+
+	@Name("edu.uci.eecs.compiler.SSA")
+	@Label("SSA Construction")
+	@Description("Phi placement and renaming of one method")
+	@Category(CATEGORY)
+	public static class SSAEvent extends Event {
+		@Label("Method")
+		public String method;
+
+		@Label("Instructions Before")
+		public int instructionsBefore;
+
+		@Label("Instructions After")
+		public int instructionsAfter;
+
+		@Label("Phis")
+		public int phis;
+	}
+
+	@Name("edu.uci.eecs.compiler.Pass")
+	@Label("Optimization Pass")
+	@Description("One pass of the pipeline on one method")
+	@Category(CATEGORY)
+	public static class PassEvent extends Event {
+		@Label("Pass")
+		public String pass;
+
+		@Label("Method")
+		public String method;
+
+		@Label("Instructions Before")
+		public int instructionsBefore;
+
+		@Label("Instructions After")
+		public int instructionsAfter;
+
+		@Label("Changed")
+		public boolean changed;
+	}
+
+	@Name("edu.uci.eecs.compiler.Execute")
+	@Label("DLX Execute")
+	@Description("Run of a program on the DLX emulator")
+	@Category(CATEGORY)
+	public static class ExecuteEvent extends Event {
+		@Label("Program Size")
+		public int programSize;
+
+		@Label("Executed Instructions")
+		public long executedInstructions;
+	}
+
+	public static int instructions(Method method) {
+		int instructions = 0;
+		for(Block block : method.getBlocks()) {
+			instructions += block.getInstructions().size();
+		}
+		return instructions;
+	}
+}
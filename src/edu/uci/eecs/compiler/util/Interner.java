@@ -0,0 +1,143 @@
+package edu.uci.eecs.compiler.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assigns dense int ids to the identifiers of one compilation, so symbol tables and
+ * states can index arrays by id instead of hashing strings.
+ *
+ * Ids are given at scan time. The byte buffer path hashes the bytes the same way as
+ * String.hashCode() does for ASCII, so an identifier seen before never creates a String.
+ *
+ */
+public class Interner {
+
+	//pseudo variable that holds the return value of a function, it is never an identifier
+	public static final int RETURN_ID = 0;
+	public static final int NOT_FOUND = -1;
+
+	private List<String> names;
+	private int[] hashes;
+	private int[] slots;   //id + 1, 0 for empty slot
+
+	public Interner() {
+		this.names = new ArrayList<String>();
+		this.hashes = new int[16];
+		this.slots = new int[32];
+		intern("return");
+	}
+	
+	/**
+	 * Forget all identifiers but keep the tables, so the interner can be reused by the
+	 * next compilation without growing again.
+	 */
+	public void reset() {
+		names.clear();
+		Arrays.fill(slots, 0);
+		intern("return");
+	}
+
+	public int size() {
+		return names.size();
+	}
+
+	public String getName(int id) {
+		return names.get(id);
+	}
+
+	public int intern(String name) {
+		int hash = name.hashCode();
+		int slot = hash & (slots.length - 1);
+		while(slots[slot] != 0) {
+			int id = slots[slot] - 1;
+			if(hashes[id] == hash && names.get(id).equals(name)) {
+				return id;
+			}
+			slot = (slot + 1) & (slots.length - 1);
+		}
+		return add(name, hash, slot);
+	}
+
+	public int intern(ByteBuffer buffer, int offset, int length) {
+		int hash = 0;
+		for(int i = 0; i < length; i++) {
+			hash = 31 * hash + (buffer.get(offset + i) & 0xff);
+		}
+
+		int slot = hash & (slots.length - 1);
+		while(slots[slot] != 0) {
+			int id = slots[slot] - 1;
+			if(hashes[id] == hash && equals(names.get(id), buffer, offset, length)) {
+				return id;
+			}
+			slot = (slot + 1) & (slots.length - 1);
+		}
+
+		char[] content = new char[length];
+		for(int i = 0; i < length; i++) {
+			content[i] = (char)(buffer.get(offset + i) & 0xff);
+		}
+		return add(new String(content), hash, slot);
+	}
+
+	/**
+	 * @return id of the name or NOT_FOUND, it doesn't add the name.
+	 */
+	public int lookup(String name) {
+		int hash = name.hashCode();
+		int slot = hash & (slots.length - 1);
+		while(slots[slot] != 0) {
+			int id = slots[slot] - 1;
+			if(hashes[id] == hash && names.get(id).equals(name)) {
+				return id;
+			}
+			slot = (slot + 1) & (slots.length - 1);
+		}
+		return NOT_FOUND;
+	}
+
+	private static boolean equals(String name, ByteBuffer buffer, int offset, int length) {
+		if(name.length() != length) {
+			return false;
+		}
+		for(int i = 0; i < length; i++) {
+			if(name.charAt(i) != (buffer.get(offset + i) & 0xff)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int add(String name, int hash, int slot) {
+		int id = names.size();
+		names.add(name);
+		if(id == hashes.length) {
+			int[] newHashes = new int[hashes.length * 2];
+			System.arraycopy(hashes, 0, newHashes, 0, hashes.length);
+			hashes = newHashes;
+		}
+		hashes[id] = hash;
+		slots[slot] = id + 1;
+
+		//keep the load factor under one half
+		if(names.size() * 2 > slots.length) {
+			rehash();
+		}
+		return id;
+	}
+
+	private void rehash() {
+		int[] newSlots = new int[slots.length * 2];
+		for(int id = 0; id < names.size(); id++) {
+			int slot = hashes[id] & (newSlots.length - 1);
+			while(newSlots[slot] != 0) {
+				slot = (slot + 1) & (newSlots.length - 1);
+			}
+			newSlots[slot] = id + 1;
+		}
+		slots = newSlots;
+	}
+}